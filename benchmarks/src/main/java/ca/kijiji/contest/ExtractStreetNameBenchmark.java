@@ -0,0 +1,78 @@
+package ca.kijiji.contest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of StreetNormalizer per location2 field of generated rows, and of its street id lookup with its cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ExtractStreetNameBenchmark {
+
+    private static final int FIELDS = 4096;
+
+    private final byte[] nameBuffer = new byte[256];
+    private final StreetNormalizer names = new StreetNormalizer(new StreetDictionary(1024));
+    private ByteBuffer data;
+    private int[] starts;
+    private int[] ends;
+
+    @Setup
+    public void setup() {
+        byte[] csv = TicketsGenerator.generate(FIELDS, 2012);
+        data = ByteBuffer.wrap(csv);
+        starts = new int[FIELDS];
+        ends = new int[FIELDS];
+
+        int field = 0;
+        int column = 0;
+        int start = TicketsGenerator.HEADER.length();
+        for (int i = start; i < csv.length; i++) {
+            if (csv[i] == ',' || csv[i] == '\n') {
+                if (column == 7) {
+                    starts[field] = start;
+                    ends[field++] = i;
+                }
+                column = csv[i] == '\n' ? 0 : column + 1;
+                start = i + 1;
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIELDS)
+    public int normalize() {
+        int total = 0;
+        for (int i = 0; i < FIELDS; i++) {
+            total += StreetNormalizer.normalize(data, starts[i], ends[i], nameBuffer);
+        }
+        return total;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIELDS)
+    public int streetId() {
+        int total = 0;
+        for (int i = 0; i < FIELDS; i++) {
+            total += names.streetId(data, starts[i], ends[i]);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,97 @@
+package ca.kijiji.contest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * adjustOrPutValue per key and mergeTo per map, in hash-only and verified key modes, on a street-like
+ * key distribution.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HashMapBenchmark {
+
+    private static final int DISTINCT_KEYS = 8 * 1024;
+    private static final int OPERATIONS = 64 * 1024;
+
+    @Param({"false", "true"})
+    public boolean verifyKeys;
+
+    private byte[][] keyBytes;
+    private OpenBytesLongHashMap bytesMap;
+    private OpenBytesLongHashMap mergeFrom;
+    private OpenBytesLongHashMap mergeTo;
+
+    @Setup
+    public void setup() {
+        StringBuilder[] keys = keys(DISTINCT_KEYS, OPERATIONS);
+        keyBytes = new byte[OPERATIONS][];
+        for (int i = 0; i < OPERATIONS; i++) {
+            keyBytes[i] = keys[i].toString().getBytes(StandardCharsets.US_ASCII);
+        }
+        bytesMap = new OpenBytesLongHashMap(ParkingTicketsEngine.DEFAULT_CAPACITY, verifyKeys);
+
+        // like two workers' maps after a run
+        mergeFrom = new OpenBytesLongHashMap(ParkingTicketsEngine.DEFAULT_CAPACITY, verifyKeys);
+        mergeTo = new OpenBytesLongHashMap(ParkingTicketsEngine.DEFAULT_CAPACITY, verifyKeys);
+        for (byte[] key : keyBytes) {
+            mergeFrom.adjustOrPutValue(key, 0, key.length, 30);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public OpenBytesLongHashMap bytesAdjustOrPutValue() {
+        final OpenBytesLongHashMap map = bytesMap;
+        for (byte[] key : keyBytes) {
+            map.adjustOrPutValue(key, 0, key.length, 30);
+        }
+        return map;
+    }
+
+    /**
+     * Includes clearing the destination, so each merge inserts every key.
+     */
+    @Benchmark
+    public OpenBytesLongHashMap mergeTo() {
+        mergeTo.clear();
+        mergeFrom.mergeTo(mergeTo);
+        return mergeTo;
+    }
+
+    private static StringBuilder[] keys(int distinct, int count) {
+        Random random = new Random(2012);
+        StringBuilder[] names = new StringBuilder[distinct];
+        for (int i = 0; i < distinct; i++) {
+            StringBuilder name = new StringBuilder();
+            for (int n = 4 + random.nextInt(8); n > 0; n--) {
+                name.append((char) ('A' + random.nextInt(26)));
+            }
+            names[i] = name;
+        }
+
+        StringBuilder[] keys = new StringBuilder[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = names[(int) (distinct * Math.pow(random.nextDouble(), 4))];
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,104 @@
+package ca.kijiji.contest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The engine's phases on generated rows: parse into the workers' totals, the partitioned merge, the full
+ * ordering and the top-k selection, plus the whole run. Each state has its own engine.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = {"-Xms1G", "-Xmx1G"})
+public class PhaseBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Input {
+        @Param("1000000")
+        public int rows;
+
+        byte[] csv;
+        ParkingTicketsEngine engine;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            csv = TicketsGenerator.generate(rows, 2012);
+            engine = new ParkingTicketsEngine();
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            engine.close();
+        }
+    }
+
+    /**
+     * Workers' totals filled and waiting to be merged.
+     */
+    @State(Scope.Benchmark)
+    public static class Parsed extends Input {
+        @Setup(Level.Invocation)
+        public void parse() throws IOException {
+            engine.parse(new ByteArrayInputStream(csv));
+        }
+    }
+
+    /**
+     * Merged totals, which ordering only reads.
+     */
+    @State(Scope.Benchmark)
+    public static class Merged extends Input {
+        OpenBytesLongHashMap map0;
+
+        @Setup(Level.Trial)
+        public void aggregate() throws IOException {
+            map0 = engine.aggregate(new ByteArrayInputStream(csv));
+        }
+    }
+
+    @Benchmark
+    public ParkingTicketsEngine parse(Input input) throws IOException {
+        input.engine.parse(new ByteArrayInputStream(input.csv));
+        return input.engine;
+    }
+
+    @Benchmark
+    public OpenBytesLongHashMap merge(Parsed parsed) {
+        return parsed.engine.merge();
+    }
+
+    @Benchmark
+    public SortedMap<String, Long> order(Merged merged) {
+        return merged.engine.orderLongs(merged.map0);
+    }
+
+    @Benchmark
+    public List<Map.Entry<String, Long>> top10(Merged merged) {
+        return merged.engine.top(merged.map0, 10);
+    }
+
+    @Benchmark
+    public SortedMap<String, Integer> sortStreetsByProfitability(Input input) {
+        return input.engine.sortStreetsByProfitability(new ByteArrayInputStream(input.csv));
+    }
+}
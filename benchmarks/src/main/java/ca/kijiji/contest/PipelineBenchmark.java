@@ -0,0 +1,70 @@
+package ca.kijiji.contest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stream parsing with the ArrayBlockingQueue hand-off against the Disruptor ring and its wait strategies,
+ * and mapped file aggregation with the queue against fork/join. The spinning strategies need a core per
+ * worker besides the reader's.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = {"-Xms1G", "-Xmx1G"})
+public class PipelineBenchmark {
+
+    @Param("1000000")
+    public int rows;
+
+    @Param({"QUEUE", "FORK_JOIN", "DISRUPTOR_BLOCKING", "DISRUPTOR_SLEEPING", "DISRUPTOR_YIELDING", "DISRUPTOR_BUSY_SPIN"})
+    public ParkingTicketsEngine.Pipeline pipeline;
+
+    private byte[] csv;
+    private Path file;
+    private ParkingTicketsEngine engine;
+
+    @Setup
+    public void setup() throws IOException {
+        csv = TicketsGenerator.generate(rows, 2012);
+        file = Files.createTempFile("tickets", ".csv");
+        Files.write(file, csv);
+        engine = new ParkingTicketsEngine(ParkingTicketsEngine.DEFAULT_WORKERS, ParkingTicketsEngine.DEFAULT_CAPACITY,
+                ParkingTicketsEngine.DEFAULT_BUFFER_SIZE, pipeline);
+    }
+
+    @TearDown
+    public void teardown() throws IOException {
+        engine.close();
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public ParkingTicketsEngine parse() throws IOException {
+        engine.parse(new ByteArrayInputStream(csv));
+        return engine;
+    }
+
+    @Benchmark
+    public OpenBytesLongHashMap aggregateFile() throws IOException {
+        return engine.aggregate(file);
+    }
+}
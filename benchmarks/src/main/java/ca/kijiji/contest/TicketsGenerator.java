@@ -0,0 +1,76 @@
+package ca.kijiji.contest;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Writes Toronto style parking ticket rows, so benchmarks don't need the 2012 data set. Streets are
+ * skewed like ticket data: a few streets get most of the tickets.
+ */
+public class TicketsGenerator {
+
+    static final String HEADER = "tag_number_masked,date_of_infraction,infraction_code,infraction_description,"
+            + "set_fine_amount,time_of_infraction,location1,location2,location3,location4\n";
+
+    private static final String[] STREETS = {
+        "KING", "QUEEN", "YONGE", "BLOOR", "ST CLAIR", "DUNDAS", "COLLEGE", "BAY", "SPADINA", "FRONT",
+        "THE QUEENSWAY", "ADELAIDE", "RICHMOND", "CHURCH", "JARVIS", "BATHURST", "DUFFERIN", "EGLINTON",
+        "LAWRENCE", "SHEPPARD", "FINCH", "DANFORTH", "GERRARD", "CARLTON", "WELLESLEY", "HARBOUR", "16TH"
+    };
+    private static final String[] SUFFIXES = { "ST", "AVE", "AV", "RD", "BLVD", "CRT", "DR" };
+    private static final String[] DIRECTIONS = { "", " E", " W", " EAST", " WEST", " N", " S" };
+    private static final int[] FINES = { 0, 15, 20, 30, 40, 60, 100, 150, 250, 450 };
+
+    private static final int DISTINCT_STREETS = 4 * 1024;
+
+    /**
+     * @return header and rows, the same for the same arguments
+     */
+    public static byte[] generate(int rows, long seed) {
+        Random random = new Random(seed);
+        String[] streets = streets(random);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(rows * 90);
+        StringBuilder row = new StringBuilder(128);
+        append(out, row.append(HEADER));
+        for (int i = 0; i < rows; i++) {
+            row.setLength(0);
+            // the first 2 columns are 8 characters each
+            row.append(String.format("***%05d,2012%02d%02d,", i % 100000, 1 + random.nextInt(12), 1 + random.nextInt(28)));
+            row.append(1 + random.nextInt(420)).append(",PARK - SIGNED HWY-PROHIBIT DY/TM,");
+            row.append(FINES[random.nextInt(FINES.length)]).append(',');
+            row.append(String.format("%04d", random.nextInt(2400))).append(",NR,");
+            switch (random.nextInt(4)) {
+            case 0: row.append(1 + random.nextInt(3000)).append(' '); break;
+            case 1: row.append(1 + random.nextInt(99)).append('-').append(100 + random.nextInt(100)).append(' '); break;
+            case 2: row.append("R/O ").append(1 + random.nextInt(99)).append(' '); break;
+            default: break;
+            }
+            row.append(streets[(int) (streets.length * Math.pow(random.nextDouble(), 4))]);
+            row.append(' ').append(SUFFIXES[random.nextInt(SUFFIXES.length)]);
+            row.append(DIRECTIONS[random.nextInt(DIRECTIONS.length)]);
+            row.append(random.nextInt(5) == 0 ? ",,ON\n" : ",,\n");
+            append(out, row);
+        }
+        return out.toByteArray();
+    }
+
+    private static String[] streets(Random random) {
+        String[] streets = new String[DISTINCT_STREETS];
+        System.arraycopy(STREETS, 0, streets, 0, STREETS.length);
+        for (int i = STREETS.length; i < streets.length; i++) {
+            StringBuilder name = new StringBuilder();
+            for (int n = 4 + random.nextInt(7); n > 0; n--) {
+                name.append((char) ('A' + random.nextInt(26)));
+            }
+            streets[i] = name.toString();
+        }
+        return streets;
+    }
+
+    private static void append(ByteArrayOutputStream out, CharSequence row) {
+        byte[] bytes = row.toString().getBytes(StandardCharsets.US_ASCII);
+        out.write(bytes, 0, bytes.length);
+    }
+}
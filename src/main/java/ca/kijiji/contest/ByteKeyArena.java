@@ -0,0 +1,120 @@
+package ca.kijiji.contest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Append-only store for the byte keys of the OpenBytes maps. Each key is prefixed by its 2-byte length
+ * and referred to by the offset of that prefix.
+ */
+final class ByteKeyArena {
+
+	static final int MAX_KEY_LENGTH = 0xffff;
+
+	private byte[] bytes;
+	private int end;
+
+	ByteKeyArena(int initialSize) {
+		bytes = new byte[Math.max(initialSize, 16)];
+	}
+
+	final void clear() {
+		end = 0;
+	}
+
+	/**
+	 * @return offset of the copied key
+	 */
+	final int append(final byte[] data, final int start, final int len) {
+		if (len > MAX_KEY_LENGTH) {
+			throw new IllegalArgumentException("Key length "+ len);
+		}
+		final int offset = end;
+		if (offset + 2 + len > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, offset + 2 + len));
+		}
+		bytes[offset] = (byte) (len >>> 8);
+		bytes[offset + 1] = (byte) len;
+		System.arraycopy(data, start, bytes, offset + 2, len);
+		end = offset + 2 + len;
+		return offset;
+	}
+
+	/**
+	 * The backing array, valid until the next append, with a key's bytes at {@code offset + 2}.
+	 */
+	final byte[] bytes() {
+		return bytes;
+	}
+
+	final int length(final int offset) {
+		return (bytes[offset] & 0xff) << 8 | bytes[offset + 1] & 0xff;
+	}
+
+	final boolean equals(final int offset, final byte[] data, final int start, final int len) {
+		if (length(offset) != len) {
+			return false;
+		}
+		for (int i = 0, k = offset + 2; i < len; i++, k++) {
+			if (bytes[k] != data[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	final boolean equals(final int offset, final CharSequence key) {
+		final int len = key.length();
+		if (length(offset) != len) {
+			return false;
+		}
+		for (int i = 0, k = offset + 2; i < len; i++, k++) {
+			if ((bytes[k] & 0xff) != key.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Orders keys like String.compareTo orders their ISO-8859-1 Strings.
+	 */
+	final int compare(final int offset1, final int offset2) {
+		final int len1 = length(offset1);
+		final int len2 = length(offset2);
+		for (int i = offset1 + 2, k = offset2 + 2, end = i + Math.min(len1, len2); i < end; i++, k++) {
+			if (bytes[i] != bytes[k]) {
+				return (bytes[i] & 0xff) - (bytes[k] & 0xff);
+			}
+		}
+		return len1 - len2;
+	}
+
+	final String toString(final int offset) {
+		return new String(bytes, offset + 2, length(offset), StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * FNV-1 (Fowler–Noll–Vo) hash 32 of the bytes, same as hash(CharSequence) for ASCII keys,
+	 * never 0 which marks an empty slot
+	 */
+	static final int hash(final byte[] data, final int start, final int len) {
+		int hash = 0;
+
+		final int end = start + len;
+		for (int i = start; i < end; i++) {
+			hash = (16777619 * hash) ^ (data[i] & 0xff);
+		}
+		return hash != 0 ? hash : 1;
+	}
+
+	static final int hash(final CharSequence key) {
+		int hash = 0;
+
+		final int l = key.length();
+		for (int i = 0; i < l; i++) {
+			hash = (16777619 * hash) ^ key.charAt(i);
+		}
+		return hash != 0 ? hash : 1;
+	}
+}
@@ -0,0 +1,179 @@
+package ca.kijiji.contest;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Where the columns the engine reads are in a tickets file, found by name in its header row. Leading
+ * columns that have the same width in every sampled row are jumped over rather than scanned, like the
+ * 8 byte tag_number_masked and date_of_infraction of the 2012 file. Rows whose separators aren't where
+ * the sample put them, or that have other separators or a newline before them, are scanned from their start.
+ *
+ * The columns of the GroupBy keys are optional, -1 when the header doesn't have them.
+ */
+final class CsvSchema {
+
+	static final String FINE_COLUMN = "set_fine_amount";
+	static final String LOCATION_COLUMN = "location2";
+	static final String CODE_COLUMN = "infraction_code";
+	static final String DATE_COLUMN = "date_of_infraction";
+	static final String TIME_COLUMN = "time_of_infraction";
+	static final int SAMPLE_ROWS = 64;
+
+	/** the 2012 layout, for rows appended without their header */
+	static final CsvSchema DEFAULT = new CsvSchema(4, 7, 2, 1, 5, new int[] {8, 17});
+
+	final int fineColumn;
+	final int locationColumn;
+	final int codeColumn;
+	final int dateColumn;
+	final int timeColumn;
+	// offsets from the row start of the separators after each fixed width column
+	final int[] separators;
+	// bytes from the row start to the first scanned column
+	final int skip;
+
+	CsvSchema(int fineColumn, int locationColumn, int codeColumn, int dateColumn, int timeColumn, int[] separators) {
+		this.fineColumn = fineColumn;
+		this.locationColumn = locationColumn;
+		this.codeColumn = codeColumn;
+		this.dateColumn = dateColumn;
+		this.timeColumn = timeColumn;
+		this.separators = separators;
+		this.skip = separators.length > 0 ? separators[separators.length - 1] + 1 : 0;
+	}
+
+	/**
+	 * Reads the header row at start and samples the whole rows after it, up to end.
+	 *
+	 * @throws IllegalArgumentException if the header has no set_fine_amount or location2 column
+	 */
+	static CsvSchema read(final ByteBuffer data, final int start, final int end) {
+		int fineColumn = -1;
+		int locationColumn = -1;
+		int codeColumn = -1;
+		int dateColumn = -1;
+		int timeColumn = -1;
+		int column = 0;
+		int pos = start;
+		for (boolean last = false; !last; column++) {
+			int name_end = pos;
+			while (name_end < end && data.get(name_end) != ',' && data.get(name_end) != '\n') { name_end++; }
+			last = name_end >= end || data.get(name_end) == '\n';
+			if (isName(data, pos, name_end, FINE_COLUMN)) {
+				fineColumn = column;
+			}
+			else if (isName(data, pos, name_end, LOCATION_COLUMN)) {
+				locationColumn = column;
+			}
+			else if (isName(data, pos, name_end, CODE_COLUMN)) {
+				codeColumn = column;
+			}
+			else if (isName(data, pos, name_end, DATE_COLUMN)) {
+				dateColumn = column;
+			}
+			else if (isName(data, pos, name_end, TIME_COLUMN)) {
+				timeColumn = column;
+			}
+			pos = name_end + 1;
+		}
+		if (fineColumn < 0 || locationColumn < 0) {
+			throw new IllegalArgumentException("Header has no "+ (fineColumn < 0 ? FINE_COLUMN : LOCATION_COLUMN) +" column");
+		}
+
+		// widths of the columns before the first one read, -1 once they differ between rows
+		final int fixedColumns = Math.min(fineColumn, locationColumn);
+		final int[] widths = new int[fixedColumns];
+		int fixed = fixedColumns;
+		int rows = 0;
+		for (int row_start = pos; rows < SAMPLE_ROWS && fixed > 0; rows++) {
+			int row_end = row_start;
+			while (row_end < end && data.get(row_end) != '\n') { row_end++; }
+			if (row_end >= end) {
+				break;
+			}
+			int field_start = row_start;
+			for (int c = 0; c < fixed; c++) {
+				int field_end = field_start;
+				while (field_end < row_end && data.get(field_end) != ',') { field_end++; }
+				if (field_end == row_end || rows > 0 && widths[c] != field_end - field_start) {
+					fixed = c;
+					break;
+				}
+				widths[c] = field_end - field_start;
+				field_start = field_end + 1;
+			}
+			row_start = row_end + 1;
+		}
+		if (rows == 0) {
+			fixed = 0;
+		}
+
+		final int[] separators = new int[fixed];
+		for (int c = 0, offset = 0; c < fixed; c++) {
+			offset += widths[c];
+			separators[c] = offset++;
+		}
+		return new CsvSchema(fineColumn, locationColumn, codeColumn, dateColumn, timeColumn, separators);
+	}
+
+	/**
+	 * Compares a header field to a column name, ignoring case, surrounding quotes and a trailing \r.
+	 */
+	private static boolean isName(final ByteBuffer data, int start, int end, final String name) {
+		if (end > start && data.get(end - 1) == '\r') end--;
+		if (end - start >= 2 && data.get(start) == '"' && data.get(end - 1) == '"') {
+			start++;
+			end--;
+		}
+		if (end - start != name.length()) {
+			return false;
+		}
+		for (int i = 0; i < name.length(); i++) {
+			if (Character.toLowerCase((char) data.get(start + i)) != name.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return whether the row at row_start has the sampled fixed width columns, so skip bytes can be jumped.
+	 *         The separators must be commas and the bytes between them neither, nor newlines, so a shorter
+	 *         row or column isn't jumped into the next.
+	 */
+	final boolean skips(final ByteBuffer data, final int row_start, final int block_end) {
+		if (skip == 0 || row_start + skip > block_end) {
+			return false;
+		}
+		for (int i = 0, c = 0; i < skip; i++) {
+			final byte b = data.get(row_start + i);
+			if (i == separators[c]) {
+				if (b != ',') {
+					return false;
+				}
+				c++;
+			}
+			else if (b == ',' || b == '\n') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof CsvSchema)) {
+			return false;
+		}
+		final CsvSchema other = (CsvSchema) o;
+		return fineColumn == other.fineColumn && locationColumn == other.locationColumn && codeColumn == other.codeColumn
+			&& dateColumn == other.dateColumn && timeColumn == other.timeColumn && Arrays.equals(separators, other.separators);
+	}
+
+	@Override
+	public int hashCode() {
+		return ((((fineColumn * 31 + locationColumn) * 31 + codeColumn) * 31 + dateColumn) * 31 + timeColumn) * 31
+			+ Arrays.hashCode(separators);
+	}
+}
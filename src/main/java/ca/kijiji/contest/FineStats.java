@@ -0,0 +1,54 @@
+package ca.kijiji.contest;
+
+/**
+ * Sum, count, min and max of the fines of one key of a GroupBy.
+ */
+public final class FineStats {
+
+	private final long sum;
+	private final long count;
+	private final int min;
+	private final int max;
+
+	FineStats(long sum, long count, int min, int max) {
+		this.sum = sum;
+		this.count = count;
+		this.min = min;
+		this.max = max;
+	}
+
+	public long sum() {
+		return sum;
+	}
+
+	public long count() {
+		return count;
+	}
+
+	public int min() {
+		return min;
+	}
+
+	public int max() {
+		return max;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof FineStats)) {
+			return false;
+		}
+		final FineStats other = (FineStats) o;
+		return sum == other.sum && count == other.count && min == other.min && max == other.max;
+	}
+
+	@Override
+	public int hashCode() {
+		return (((int) (sum ^ sum >>> 32) * 31 + (int) (count ^ count >>> 32)) * 31 + min) * 31 + max;
+	}
+
+	@Override
+	public String toString() {
+		return "sum="+ sum +" count="+ count +" min="+ min +" max="+ max;
+	}
+}
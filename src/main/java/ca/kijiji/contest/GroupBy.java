@@ -0,0 +1,87 @@
+package ca.kijiji.contest;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A column of the tickets that fines can be grouped by alongside the street totals, see
+ * ParkingTicketsEngine.report. Keys are small numbers read from the column's field, and rows whose field
+ * isn't a valid key, or whose file has no such column, aren't counted in the group.
+ */
+public enum GroupBy {
+	/** infraction_code, from 0 to 9999 */
+	INFRACTION_CODE(10000),
+	/** month of date_of_infraction (yyyymmdd), from 1 to 12 */
+	MONTH(13),
+	/** day of the week of date_of_infraction, from 1 for Monday to 7 for Sunday */
+	DAY_OF_WEEK(8),
+	/** hour of time_of_infraction (hhmm), from 0 to 23 */
+	HOUR(24);
+
+	static final GroupBy[] NONE = {};
+
+	// days to the start of each month, less 3 per month after February, for Sakamoto's day of the week
+	private static final int[] MONTH_OFFSETS = {0, 3, 2, 5, 0, 3, 5, 1, 4, 6, 2, 4};
+
+	/** keys are below this */
+	final int keys;
+
+	GroupBy(int keys) {
+		this.keys = keys;
+	}
+
+	/**
+	 * @return the column of the group's field in schema, -1 if there's none
+	 */
+	final int column(final CsvSchema schema) {
+		switch (this) {
+		case INFRACTION_CODE: return schema.codeColumn;
+		case HOUR: return schema.timeColumn;
+		default: return schema.dateColumn;
+		}
+	}
+
+	/**
+	 * @return the key of a field holding number, -1 if it has none
+	 */
+	final int key(final int number) {
+		switch (this) {
+		case INFRACTION_CODE:
+			return number < keys ? number : -1;
+		case HOUR:
+			return number >= 0 && number < 2400 ? number / 100 : -1;
+		default:
+			if (number < 10000000 || number > 99999999) {
+				return -1;
+			}
+			final int month = number / 100 % 100;
+			final int day = number % 100;
+			if (month < 1 || month > 12 || day < 1 || day > 31) {
+				return -1;
+			}
+			if (this == MONTH) {
+				return month;
+			}
+			final int year = month < 3 ? number / 10000 - 1 : number / 10000;
+			final int sunday0 = (year + year / 4 - year / 100 + year / 400 + MONTH_OFFSETS[month - 1] + day) % 7;
+			return sunday0 == 0 ? 7 : sunday0;
+		}
+	}
+
+	/**
+	 * @return the digits of data[start, end) as a number, -1 if there are none or anything else, or too many
+	 */
+	static int number(final ByteBuffer data, final int start, final int end) {
+		if (end <= start || end - start > 9) {
+			return -1;
+		}
+		int number = 0;
+		for (int i = start; i < end; i++) {
+			final int digit = data.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			number = number * 10 + digit;
+		}
+		return number;
+	}
+}
@@ -0,0 +1,107 @@
+package ca.kijiji.contest;
+
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Sum, count, min and max of fines by key, for each GroupBy of a run. Used by one thread at a time.
+ */
+final class GroupTotals {
+
+	GroupBy[] groupBys = GroupBy.NONE;
+	// by group, then key, min and max are only set where count isn't 0
+	private long[][] sums = {};
+	private long[][] counts = {};
+	private int[][] mins = {};
+	private int[][] maxs = {};
+
+	/**
+	 * Groups by groupBys from now on, empty unless they're the ones already used.
+	 */
+	final void use(final GroupBy[] groupBys) {
+		if (Arrays.equals(groupBys, this.groupBys)) {
+			return;
+		}
+		this.groupBys = groupBys.clone();
+		final int n = groupBys.length;
+		sums = new long[n][];
+		counts = new long[n][];
+		mins = new int[n][];
+		maxs = new int[n][];
+		for (int g = 0; g < n; g++) {
+			final int keys = groupBys[g].keys;
+			sums[g] = new long[keys];
+			counts[g] = new long[keys];
+			mins[g] = new int[keys];
+			maxs[g] = new int[keys];
+		}
+	}
+
+	final void add(final int group, final int key, final int fine) {
+		if (counts[group][key]++ == 0) {
+			mins[group][key] = fine;
+			maxs[group][key] = fine;
+		}
+		else if (fine < mins[group][key]) {
+			mins[group][key] = fine;
+		}
+		else if (fine > maxs[group][key]) {
+			maxs[group][key] = fine;
+		}
+		sums[group][key] += fine;
+	}
+
+	final void clear() {
+		for (int g = 0; g < groupBys.length; g++) {
+			Arrays.fill(sums[g], 0);
+			Arrays.fill(counts[g], 0);
+		}
+	}
+
+	/**
+	 * Adds every group to dest's, key by key. dest must use the same groupBys.
+	 */
+	final void addTo(final GroupTotals dest) {
+		addTo(dest, 0, 1);
+	}
+
+	/**
+	 * Adds part of parts equal ranges of each group's keys to dest's, so threads adding different parts to
+	 * the same dest don't interfere. dest must use the same groupBys.
+	 */
+	final void addTo(final GroupTotals dest, final int part, final int parts) {
+		for (int g = 0; g < groupBys.length; g++) {
+			final long[] count = counts[g];
+			final long[] destCount = dest.counts[g];
+			for (int key = count.length * part / parts, end = count.length * (part + 1) / parts; key < end; key++) {
+				if (count[key] == 0) {
+					continue;
+				}
+				if (destCount[key] == 0) {
+					dest.mins[g][key] = mins[g][key];
+					dest.maxs[g][key] = maxs[g][key];
+				}
+				else {
+					dest.mins[g][key] = Math.min(dest.mins[g][key], mins[g][key]);
+					dest.maxs[g][key] = Math.max(dest.maxs[g][key], maxs[g][key]);
+				}
+				destCount[key] += count[key];
+				dest.sums[g][key] += sums[g][key];
+			}
+		}
+	}
+
+	/**
+	 * @return the stats of the keys of group that were counted, by key
+	 */
+	final SortedMap<Integer, FineStats> stats(final int group) {
+		final SortedMap<Integer, FineStats> stats = new TreeMap<>();
+		for (int key = 0; key < counts[group].length; key++) {
+			if (counts[group][key] != 0) {
+				stats.put(key, new FineStats(sums[group][key], counts[group][key], mins[group][key], maxs[group][key]));
+			}
+		}
+		return stats;
+	}
+}
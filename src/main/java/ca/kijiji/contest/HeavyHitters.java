@@ -0,0 +1,363 @@
+package ca.kijiji.contest;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Approximate fines by street name in memory fixed when it's made, for inputs with too many distinct names
+ * to total exactly. A Count-Min sketch bounds every name's total from above, and Space-Saving keeps the
+ * names with the largest totals and bounds them from below:
+ * <ul>
+ * <li>each of depth rows of width counters adds a fine to the counter its hash of the name picks, so the
+ * smallest of a name's counters is at least its total, and passes it by at most e / width of all fines with
+ * probability 1 - e^-depth
+ * <li>each of the Space-Saving counters holds a name, and once all are taken a new name takes the smallest
+ * counter over and keeps its count as error, so a held name's total is between count - error and count
+ * </ul>
+ * Summaries with the same dimensions merge, so each worker keeps its own. Used by one thread at a time.
+ */
+final class HeavyHitters {
+
+	static final int DEFAULT_WIDTH = 1 << 14;
+	static final int DEFAULT_DEPTH = 4;
+	static final int MIN_COUNTERS = 1024;
+	// StreetNormalizer names are no longer
+	static final int NAME_SIZE = 256;
+
+	final int width;
+	final int depth;
+	final int capacity;
+
+	private final int widthBits;
+	private final long[] sketch;
+	private final long[] seeds;
+	// all fines added
+	private long total;
+
+	// Space-Saving counters, names at counter * NAME_SIZE
+	private final long[] counts;
+	private final long[] errors;
+	private final long[] hashes;
+	private final int[] lengths;
+	private final byte[] names;
+	private int size;
+	// min-heap of counters by count, and the heap index of each counter
+	private final int[] heap;
+	private final int[] positions;
+	// counter + 1 per slot by hash, 0 for an empty slot
+	private final int[] table;
+	private final int tableBits;
+
+	private final byte[] name = new byte[NAME_SIZE];
+
+	/**
+	 * @param width counters per sketch row, a power of 2
+	 * @param depth sketch rows
+	 * @param capacity names held
+	 */
+	HeavyHitters(int width, int depth, int capacity) {
+		if (width < 2 || Integer.bitCount(width) != 1 || depth < 1 || capacity < 1) {
+			throw new IllegalArgumentException("width = "+ width +", depth = "+ depth +", capacity = "+ capacity);
+		}
+		this.width = width;
+		this.depth = depth;
+		this.capacity = capacity;
+		widthBits = Integer.numberOfTrailingZeros(width);
+		sketch = new long[width * depth];
+		seeds = new long[depth];
+		for (int r = 0; r < depth; r++) {
+			// odd multipliers for multiply-shift hashing, the same in every summary so they merge
+			seeds[r] = 0x9e3779b97f4a7c15L * (2 * r + 1) | 1;
+		}
+
+		counts = new long[capacity];
+		errors = new long[capacity];
+		hashes = new long[capacity];
+		lengths = new int[capacity];
+		names = new byte[capacity * NAME_SIZE];
+		heap = new int[capacity];
+		positions = new int[capacity];
+		tableBits = 32 - Integer.numberOfLeadingZeros(capacity * 4 - 1);
+		table = new int[1 << tableBits];
+	}
+
+	/**
+	 * @return a summary fixed for the k largest totals
+	 */
+	static HeavyHitters forTop(int k) {
+		return new HeavyHitters(DEFAULT_WIDTH, DEFAULT_DEPTH, Math.max(MIN_COUNTERS, 4 * k));
+	}
+
+	/**
+	 * @return bytes of the arrays, fixed when the summary is made
+	 */
+	final long footprint() {
+		return 8L * sketch.length + (8L + 8 + 8 + 4 + NAME_SIZE + 4 + 4) * capacity + 4L * table.length;
+	}
+
+	final long total() {
+		return total;
+	}
+
+	final void clear() {
+		Arrays.fill(sketch, 0);
+		Arrays.fill(table, 0);
+		total = 0;
+		size = 0;
+	}
+
+	/**
+	 * Adds fine to the canonical street name of data[start, end), if it has one.
+	 */
+	final void add(final ByteBuffer data, final int start, final int end, final long fine) {
+		final int length = StreetNormalizer.normalize(data, start, end, name);
+		if (length > 0) {
+			add(name, length, fine);
+		}
+	}
+
+	final void add(final byte[] key, final int len, final long fine) {
+		final long hash = hash(key, len);
+		total += fine;
+		for (int r = 0; r < depth; r++) {
+			sketch[r * width + column(hash, r)] += fine;
+		}
+
+		int counter = find(key, 0, len, hash);
+		if (counter >= 0) {
+			counts[counter] += fine;
+			siftDown(positions[counter]);
+		}
+		else if (size < capacity) {
+			put(key, 0, len, hash, fine, 0);
+		}
+		else {
+			// the smallest counter takes the name over, keeping its count as error
+			counter = heap[0];
+			remove(counter);
+			errors[counter] = counts[counter];
+			counts[counter] += fine;
+			hold(counter, key, 0, len, hash);
+			siftDown(0);
+		}
+	}
+
+	/**
+	 * @return the sketch's bound on the total of the name, never below it
+	 */
+	final long estimate(final byte[] key, final int len) {
+		return estimate(hash(key, len));
+	}
+
+	/**
+	 * Adds the summary to dest's, which must have the same dimensions. The sketches add counter by counter.
+	 * The counters of both are combined by name, where a name held by one summary only may have counted up
+	 * to the other's smallest count, if that one is full, and the largest counts are kept.
+	 */
+	final void addTo(final HeavyHitters dest) {
+		if (dest.width != width || dest.depth != depth || dest.capacity != capacity) {
+			throw new IllegalArgumentException("Merging summaries of different dimensions");
+		}
+		for (int i = 0; i < sketch.length; i++) {
+			dest.sketch[i] += sketch[i];
+		}
+		dest.total += total;
+
+		final long destMin = dest.size == capacity ? dest.counts[dest.heap[0]] : 0;
+		final long min = size == capacity ? counts[heap[0]] : 0;
+		final int n = dest.size + size;
+		final long[] mergedCounts = new long[n];
+		final long[] mergedErrors = new long[n];
+		final boolean[] both = new boolean[size];
+		for (int d = 0; d < dest.size; d++) {
+			final int c = find(dest.names, d * NAME_SIZE, dest.lengths[d], dest.hashes[d]);
+			if (c >= 0) {
+				both[c] = true;
+			}
+			mergedCounts[d] = dest.counts[d] + (c >= 0 ? counts[c] : min);
+			mergedErrors[d] = dest.errors[d] + (c >= 0 ? errors[c] : min);
+		}
+		for (int c = 0; c < size; c++) {
+			mergedCounts[dest.size + c] = both[c] ? 0 : counts[c] + destMin;
+			mergedErrors[dest.size + c] = errors[c] + destMin;
+		}
+
+		final Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				return Long.compare(mergedCounts[i2], mergedCounts[i1]);
+			}});
+
+		final int destSize = dest.size;
+		final byte[] destNames = dest.names.clone();
+		final long[] destHashes = dest.hashes.clone();
+		final int[] destLengths = dest.lengths.clone();
+		Arrays.fill(dest.table, 0);
+		dest.size = 0;
+		for (int i = 0; i < n && dest.size < capacity; i++) {
+			final int from = order[i];
+			if (from >= destSize && both[from - destSize]) {
+				continue;
+			}
+			if (from < destSize) {
+				dest.put(destNames, from * NAME_SIZE, destLengths[from], destHashes[from], mergedCounts[from], mergedErrors[from]);
+			}
+			else {
+				final int c = from - destSize;
+				dest.put(names, c * NAME_SIZE, lengths[c], hashes[c], mergedCounts[from], mergedErrors[from]);
+			}
+		}
+	}
+
+	/**
+	 * @return the k held names with the largest bounds, largest first then by name, each estimate the
+	 *   smaller of its count and the sketch's bound
+	 */
+	final List<StreetEstimate> top(final int k) {
+		final List<StreetEstimate> held = new ArrayList<>(size);
+		for (int c = 0; c < size; c++) {
+			final long bound = Math.min(counts[c], estimate(hashes[c]));
+			final long lowest = Math.max(0, counts[c] - errors[c]);
+			held.add(new StreetEstimate(new String(names, c * NAME_SIZE, lengths[c], StandardCharsets.ISO_8859_1), bound, bound - lowest));
+		}
+		Collections.sort(held, new Comparator<StreetEstimate>() {
+			public int compare(StreetEstimate e1, StreetEstimate e2) {
+				final int byTotal = Long.compare(e2.total(), e1.total());
+				return byTotal != 0 ? byTotal : e1.street().compareTo(e2.street());
+			}});
+		return new ArrayList<>(held.subList(0, Math.min(k, held.size())));
+	}
+
+	private final long estimate(final long hash) {
+		long estimate = Long.MAX_VALUE;
+		for (int r = 0; r < depth; r++) {
+			estimate = Math.min(estimate, sketch[r * width + column(hash, r)]);
+		}
+		return estimate;
+	}
+
+	private final int column(final long hash, final int row) {
+		return (int) ((hash * seeds[row]) >>> (64 - widthBits));
+	}
+
+	private final int slot(final long hash) {
+		return (int) (hash >>> (64 - tableBits));
+	}
+
+	/**
+	 * @return the counter holding key[start, start + len), -1 if none does
+	 */
+	private final int find(final byte[] key, final int start, final int len, final long hash) {
+		final int mask = table.length - 1;
+		for (int cur = slot(hash); table[cur] != 0; cur = (cur + 1) & mask) {
+			final int counter = table[cur] - 1;
+			if (hashes[counter] == hash && equals(counter, key, start, len)) {
+				return counter;
+			}
+		}
+		return -1;
+	}
+
+	private final boolean equals(final int counter, final byte[] key, final int start, final int len) {
+		if (lengths[counter] != len) {
+			return false;
+		}
+		for (int i = 0, k = counter * NAME_SIZE; i < len; i++, k++) {
+			if (names[k] != key[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Holds the key in a new counter, which must be available.
+	 */
+	private final void put(final byte[] key, final int start, final int len, final long hash, final long count, final long error) {
+		final int counter = size++;
+		counts[counter] = count;
+		errors[counter] = error;
+		hold(counter, key, start, len, hash);
+		heap[counter] = counter;
+		positions[counter] = counter;
+		siftUp(counter);
+	}
+
+	private final void hold(final int counter, final byte[] key, final int start, final int len, final long hash) {
+		System.arraycopy(key, start, names, counter * NAME_SIZE, len);
+		lengths[counter] = len;
+		hashes[counter] = hash;
+		final int mask = table.length - 1;
+		int cur = slot(hash);
+		while (table[cur] != 0) {
+			cur = (cur + 1) & mask;
+		}
+		table[cur] = counter + 1;
+	}
+
+	/**
+	 * Takes the counter out of the table, shifting back the entries probed past it.
+	 */
+	private final void remove(final int counter) {
+		final int mask = table.length - 1;
+		int cur = slot(hashes[counter]);
+		while (table[cur] != counter + 1) {
+			cur = (cur + 1) & mask;
+		}
+		for (int next = (cur + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+			final int home = slot(hashes[table[next] - 1]);
+			if (((next - home) & mask) >= ((next - cur) & mask)) {
+				table[cur] = table[next];
+				cur = next;
+			}
+		}
+		table[cur] = 0;
+	}
+
+	private final void siftUp(int i) {
+		final int counter = heap[i];
+		for (int parent; i > 0 && counts[heap[parent = (i - 1) >>> 1]] > counts[counter]; i = parent) {
+			heap[i] = heap[parent];
+			positions[heap[i]] = i;
+		}
+		heap[i] = counter;
+		positions[counter] = i;
+	}
+
+	private final void siftDown(int i) {
+		final int counter = heap[i];
+		for (int child; (child = 2 * i + 1) < size; i = child) {
+			if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+				child++;
+			}
+			if (counts[heap[child]] >= counts[counter]) {
+				break;
+			}
+			heap[i] = heap[child];
+			positions[heap[i]] = i;
+		}
+		heap[i] = counter;
+		positions[counter] = i;
+	}
+
+	/**
+	 * @return FNV-1a 64 of the key, mixed so its high bits depend on every byte
+	 */
+	static final long hash(final byte[] key, final int len) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < len; i++) {
+			hash = (hash ^ (key[i] & 0xff)) * 0x100000001b3L;
+		}
+		hash = (hash ^ hash >>> 33) * 0xff51afd7ed558ccdL;
+		hash = (hash ^ hash >>> 33) * 0xc4ceb9fe1a85ec53L;
+		return hash ^ hash >>> 33;
+	}
+}
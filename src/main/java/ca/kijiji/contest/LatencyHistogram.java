@@ -0,0 +1,101 @@
+package ca.kijiji.contest;
+
+import java.util.Arrays;
+
+/**
+ * Counts of non-negative values in log-linear buckets, like HdrHistogram: each power of 2 is split into
+ * SUB_BUCKETS buckets, so values are kept to within 1 / SUB_BUCKETS of their size over the whole long
+ * range, in a fixed 15 KB. Used by one thread at a time.
+ */
+public class LatencyHistogram {
+
+	static final int SUB_BITS = 5;
+	static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	// values below SUB_BUCKETS are exact, each power of 2 above has SUB_BUCKETS buckets
+	private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB_BUCKETS];
+	private long count;
+	private long sum;
+	private long max;
+
+	public void record(long value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Value "+ value);
+		}
+		counts[bucket(value)]++;
+		count++;
+		sum += value;
+		max = Math.max(max, value);
+	}
+
+	public long count() {
+		return count;
+	}
+
+	public long max() {
+		return max;
+	}
+
+	public double mean() {
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * @param percentile from 0 to 100
+	 * @return the highest value of the bucket holding the percentile, 0 when empty
+	 */
+	public long percentile(double percentile) {
+		if (!(percentile >= 0 && percentile <= 100)) {
+			throw new IllegalArgumentException("Percentile "+ percentile);
+		}
+		final long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+		long seen = 0;
+		for (int bucket = 0; bucket < counts.length; bucket++) {
+			seen += counts[bucket];
+			if (seen >= rank) {
+				return Math.min(highest(bucket), max);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Adds the counts of other to this one's.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int bucket = 0; bucket < counts.length; bucket++) {
+			counts[bucket] += other.counts[bucket];
+		}
+		count += other.count;
+		sum += other.sum;
+		max = Math.max(max, other.max);
+	}
+
+	public void reset() {
+		Arrays.fill(counts, 0);
+		count = sum = max = 0;
+	}
+
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+		final int shift = exponent - SUB_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	static long highest(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		final int shift = bucket / SUB_BUCKETS - 1;
+		final long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return "count="+ count +" mean="+ (long) mean() +" p50="+ percentile(50) +" p99="+ percentile(99) +" max="+ max;
+	}
+}
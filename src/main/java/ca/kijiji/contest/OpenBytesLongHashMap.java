@@ -0,0 +1,325 @@
+package ca.kijiji.contest;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Open addressing map keyed by ASCII byte ranges, with 64-bit values for totals that can pass
+ * Integer.MAX_VALUE. Keys are copied into a ByteKeyArena and a slot refers to its key by arena offset. Hashes
+ * are kept in an int[] next to the long[] values rather than packed, so a probe reads one dense array of
+ * 4-byte slots. Without verifyKeys, keys of equal hashes are taken as equal.
+ */
+public class OpenBytesLongHashMap {
+	public volatile long pad7, pad6, pad5, pad4, pad3, pad2, pad1;
+
+	public final long NO_ELEMENT_VALUE = 0;
+
+	public static final float DEFAULT_LOAD_FACTOR = 0.7f;
+
+	private int capacity;
+	private int size;
+	private int threshold;
+	private final float loadFactor;
+	private final boolean verifyKeys;
+	private int[] hashes;
+	private long[] values;
+	private int[] keyOffsets;
+	private final ByteKeyArena arena;
+
+	public volatile long Pad1, Pad2, Pad3, Pad4, Pad5, Pad6, Pad7;
+
+	public OpenBytesLongHashMap(int capacity) {
+		this(capacity, false);
+	}
+
+	public OpenBytesLongHashMap(int capacity, boolean verifyKeys) {
+		this(capacity, verifyKeys, DEFAULT_LOAD_FACTOR);
+	}
+
+	public OpenBytesLongHashMap(int capacity, boolean verifyKeys, float loadFactor) {
+		if (!(loadFactor > 0 && loadFactor < 1)) {
+			throw new IllegalArgumentException("Load factor "+ loadFactor);
+		}
+		this.capacity = capacity;
+		this.loadFactor = loadFactor;
+		this.threshold = (int) (capacity * loadFactor);
+		this.verifyKeys = verifyKeys;
+		hashes = new int[capacity];
+		values = new long[capacity];
+		keyOffsets = new int[capacity];
+		// room for the typical street name of ~8 bytes per slot
+		arena = new ByteKeyArena(capacity * 8);
+		pad7 = pad6 = pad5 = pad4 = pad3 = pad2 = pad1 = 7;
+		Pad1 = Pad2 = Pad3 = Pad4 = Pad5 = Pad6 = Pad7 = 7;
+	}
+
+	public final void clear() {
+		Arrays.fill(hashes, 0);
+		arena.clear();
+		size = 0;
+	}
+
+	public final int capacity() {
+		return capacity;
+	}
+
+	public final int size() {
+		return size;
+	}
+
+	/**
+	 * Looks up an ASCII String key without converting it to bytes.
+	 */
+	public final long get(final CharSequence key) {
+		final int hash = ByteKeyArena.hash(key);
+		int cur = hash % capacity;
+		if (cur < 0) cur += capacity;
+
+		int h;
+		for (int n = 0; n < capacity && (h = hashes[cur]) != 0; n++) {
+			if (h == hash && (!verifyKeys || arena.equals(keyOffsets[cur], key))) {
+				return values[cur];
+			}
+			if (++cur == capacity) cur = 0;
+		}
+		return NO_ELEMENT_VALUE;
+	}
+
+	public final void adjustOrPutValue(final byte[] data, final int start, final int len, final long value) {
+		adjustOrPutValue(data, start, len, ByteKeyArena.hash(data, start, len), value);
+	}
+
+	/**
+	 * For keys whose ByteKeyArena.hash is already known.
+	 */
+	public final void adjustOrPutValue(final byte[] data, final int start, final int len, final int hash, final long value) {
+		int cur = hash % capacity;
+		if (cur < 0) cur += capacity;
+
+		if (!adjustOrPutValue(data, start, len, hash, value, cur, capacity)) {
+			if (!adjustOrPutValue(data, start, len, hash, value, 0, cur)) {
+				throw new IllegalStateException("Exceeded capacity "+ capacity);
+			}
+		}
+		if (size > threshold) {
+			rehash(capacity * 2);
+		}
+	}
+
+	public final void mergeTo(OpenBytesLongHashMap mergeTo) {
+		for (int cur = 0; cur < capacity; cur++) {
+			if (hashes[cur] != 0) {
+				final int offset = keyOffsets[cur];
+				mergeTo.adjustOrPutValue(arena.bytes(), offset + 2, arena.length(offset), values[cur]);
+			}
+		}
+	}
+
+	private final boolean adjustOrPutValue(final byte[] data, final int start, final int len, final int hash, final long value, int cur, final int end) {
+		do {
+			int h = hashes[cur];
+			if (h == hash && (!verifyKeys || arena.equals(keyOffsets[cur], data, start, len))) {
+				values[cur] += value;
+				return true;
+			}
+			else if (h == 0) {
+				hashes[cur] = hash;
+				values[cur] = value;
+				keyOffsets[cur] = arena.append(data, start, len);
+				size++;
+				return true;
+			}
+		} while (++cur < end);
+
+		return false;
+	}
+
+	/**
+	 * Moves every entry into a table of newCapacity slots using the stored hashes, the arena is kept as is.
+	 */
+	private final void rehash(final int newCapacity) {
+		final int[] oldHashes = hashes;
+		final long[] oldValues = values;
+		final int[] oldKeyOffsets = keyOffsets;
+		hashes = new int[newCapacity];
+		values = new long[newCapacity];
+		keyOffsets = new int[newCapacity];
+		capacity = newCapacity;
+		threshold = (int) (newCapacity * loadFactor);
+
+		for (int i = 0; i < oldHashes.length; i++) {
+			final int hash = oldHashes[i];
+			if (hash != 0) {
+				int cur = hash % newCapacity;
+				if (cur < 0) cur += newCapacity;
+				while (hashes[cur] != 0) {
+					if (++cur == newCapacity) cur = 0;
+				}
+				hashes[cur] = hash;
+				values[cur] = oldValues[i];
+				keyOffsets[cur] = oldKeyOffsets[i];
+			}
+		}
+	}
+
+	/**
+	 * Keeps the k best slots of [cur, end) in heap, see offerTop.
+	 *
+	 * @return number of slots in heap
+	 */
+	protected final int topRange(int cur, final int end, final int[] heap, final int k) {
+		int count = 0;
+		for (; cur < end; cur++) {
+			if (hashes[cur] != 0) {
+				count = offerTop(cur, heap, count, k);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Adds slot to a bounded heap of the k best slots, by value descending then key ascending.
+	 * The worst kept slot is at the root, so a slot that doesn't beat it costs one comparison.
+	 *
+	 * @return number of slots in heap
+	 */
+	protected final int offerTop(final int slot, final int[] heap, int count, final int k) {
+		if (count < k) {
+			int i = count++;
+			for (int parent; i > 0 && ranksBefore(heap[parent = (i - 1) >>> 1], slot); i = parent) {
+				heap[i] = heap[parent];
+			}
+			heap[i] = slot;
+		}
+		else if (k > 0 && ranksBefore(slot, heap[0])) {
+			siftDown(heap, slot, count);
+		}
+		return count;
+	}
+
+	/**
+	 * Empties the heap into best first order.
+	 */
+	protected final void sortTop(final int[] heap, int count) {
+		while (count > 1) {
+			final int worst = heap[0];
+			siftDown(heap, heap[--count], count);
+			heap[count] = worst;
+		}
+	}
+
+	private final void siftDown(final int[] heap, final int slot, final int count) {
+		int i = 0;
+		for (int child; (child = 2 * i + 1) < count; i = child) {
+			if (child + 1 < count && ranksBefore(heap[child], heap[child + 1])) {
+				child++;
+			}
+			if (!ranksBefore(slot, heap[child])) {
+				break;
+			}
+			heap[i] = heap[child];
+		}
+		heap[i] = slot;
+	}
+
+	private final boolean ranksBefore(final int slot1, final int slot2) {
+		final long v1 = values[slot1];
+		final long v2 = values[slot2];
+		return v1 > v2 || v1 == v2 && arena.compare(keyOffsets[slot1], keyOffsets[slot2]) < 0;
+	}
+
+	private final boolean before(final int slot1, final int slot2, final boolean byKey) {
+		return byKey ? arena.compare(keyOffsets[slot1], keyOffsets[slot2]) < 0 : ranksBefore(slot1, slot2);
+	}
+
+	/**
+	 * @return number of occupied slots written to dest, which needs room for size() of them
+	 */
+	protected final int slots(final int[] dest) {
+		int count = 0;
+		for (int cur = 0; cur < capacity; cur++) {
+			if (hashes[cur] != 0) {
+				dest[count++] = cur;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Merge sorts slots[from, to) by key, or by value descending then key, using tmp[from, to) as scratch.
+	 */
+	protected final void sortSlots(final int[] slots, final int from, final int to, final int[] tmp, final boolean byKey) {
+		if (to - from <= 16) {
+			for (int i = from + 1; i < to; i++) {
+				final int slot = slots[i];
+				int j = i;
+				for (; j > from && before(slot, slots[j - 1], byKey); j--) {
+					slots[j] = slots[j - 1];
+				}
+				slots[j] = slot;
+			}
+			return;
+		}
+		final int mid = (from + to) >>> 1;
+		sortSlots(slots, from, mid, tmp, byKey);
+		sortSlots(slots, mid, to, tmp, byKey);
+		if (before(slots[mid], slots[mid - 1], byKey)) {
+			mergeSlots(slots, from, mid, to, tmp, byKey);
+			System.arraycopy(tmp, from, slots, from, to - from);
+		}
+	}
+
+	/**
+	 * Merges the sorted runs src[from, mid) and src[mid, to) into dest[from, to).
+	 */
+	protected final void mergeSlots(final int[] src, final int from, final int mid, final int to, final int[] dest, final boolean byKey) {
+		int i = from;
+		int j = mid;
+		for (int k = from; k < to; k++) {
+			if (j >= to || i < mid && !before(src[j], src[i], byKey)) {
+				dest[k] = src[i++];
+			}
+			else {
+				dest[k] = src[j++];
+			}
+		}
+	}
+
+	/**
+	 * @return {slots probed past their home slot by all entries, by the entry probing the most}
+	 */
+	final long[] probeLengths() {
+		long total = 0;
+		long longest = 0;
+		for (int cur = 0; cur < capacity; cur++) {
+			if (hashes[cur] != 0) {
+				int home = hashes[cur] % capacity;
+				if (home < 0) home += capacity;
+				final int probes = cur >= home ? cur - home : cur + capacity - home;
+				total += probes;
+				longest = Math.max(longest, probes);
+			}
+		}
+		return new long[] {total, longest};
+	}
+
+	final String keyAt(final int slot) {
+		return arena.toString(keyOffsets[slot]);
+	}
+
+	final long valueAt(final int slot) {
+		return values[slot];
+	}
+
+	public final void putAllTo(Map<String, Long> dest) {
+		putRangeTo(0, capacity, dest);
+	}
+
+	protected final void putRangeTo(int cur, int end, Map<String, Long> dest) {
+		for (; cur < end; cur++) {
+			if (hashes[cur] != 0) {
+				dest.put(arena.toString(keyOffsets[cur]), values[cur]);
+			}
+		}
+	}
+}
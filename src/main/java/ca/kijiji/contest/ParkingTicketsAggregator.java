@@ -0,0 +1,139 @@
+package ca.kijiji.contest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Keeps running street totals over tickets that arrive in chunks, such as a feed of CSV batches. Chunks
+ * may split rows anywhere, the start of a split row is held until the chunk with its end arrives. Totals
+ * stay in the workers' arrays between chunks, and snapshots copy them, so a refresh doesn't re-parse
+ * earlier chunks.
+ *
+ * Rows are read in the columns of the 2012 file, see CsvSchema.DEFAULT. Header rows total nothing, as their
+ * fine column isn't a number.
+ */
+public class ParkingTicketsAggregator implements Closeable {
+
+	final ParkingTicketsEngine engine;
+	final OpenBytesLongHashMap totals;
+
+	// start of a row split across chunks
+	byte[] carry = new byte[256];
+	int carryLength;
+
+	public ParkingTicketsAggregator() {
+		this(new ParkingTicketsEngine());
+	}
+
+	ParkingTicketsAggregator(ParkingTicketsEngine engine) {
+		this.engine = engine;
+		this.totals = new OpenBytesLongHashMap(engine.SIZE, true);
+	}
+
+	/**
+	 * Stops the engine's threads, the aggregator can't be used afterwards.
+	 */
+	public void close() {
+		engine.close();
+	}
+
+	public void append(byte[] chunk) {
+		append(ByteBuffer.wrap(chunk));
+	}
+
+	public void append(byte[] chunk, int offset, int length) {
+		append(ByteBuffer.wrap(chunk, offset, length));
+	}
+
+	/**
+	 * Totals the complete rows from the chunk's position to its limit, and holds on to a trailing partial row.
+	 * The chunk can be reused once this returns, its position is left at its limit.
+	 */
+	public synchronized void append(ByteBuffer chunk) {
+		int start = chunk.position();
+		final int end = chunk.limit();
+
+		if (carryLength > 0) {
+			int row_end = start;
+			while (row_end < end && chunk.get(row_end++) != '\n') {}
+			carry(chunk, start, row_end);
+			if (carry[carryLength - 1] != '\n') {
+				chunk.position(end);
+				return;
+			}
+			engine.accumulate(ByteBuffer.wrap(carry), 0, carryLength);
+			carryLength = 0;
+			start = row_end;
+		}
+
+		int rows_end = end;
+		while (rows_end > start && chunk.get(rows_end - 1) != '\n') {
+			rows_end--;
+		}
+		if (rows_end > start) {
+			engine.accumulate(chunk, start, rows_end);
+		}
+		carry(chunk, rows_end, end);
+		chunk.position(end);
+	}
+
+	/**
+	 * Appends the stream's bytes until it ends, without relying on available().
+	 */
+	public void append(InputStream stream) throws IOException {
+		final byte[] buffer = new byte[128 * 1024];
+		for (int read; (read = stream.read(buffer)) >= 0; ) {
+			append(buffer, 0, read);
+		}
+	}
+
+	/**
+	 * Totals a held partial row as if it ended here, for feeds whose last row has no newline.
+	 */
+	public synchronized void flush() {
+		if (carryLength > 0) {
+			engine.accumulate(ByteBuffer.wrap(carry), 0, carryLength);
+			carryLength = 0;
+		}
+	}
+
+	/**
+	 * Drops all totals and any held partial row.
+	 */
+	public synchronized void reset() {
+		engine.clearWorkers();
+		carryLength = 0;
+	}
+
+	/**
+	 * @return the totals of the rows appended so far, ordered like sortStreetsByProfitability, unaffected by later appends
+	 */
+	public synchronized SortedMap<String, Long> snapshot() {
+		engine.copyTotalsTo(totals);
+		return engine.orderLongs(totals);
+	}
+
+	/**
+	 * @return the k most profitable streets of the rows appended so far, most profitable first
+	 */
+	public synchronized List<Map.Entry<String, Long>> topStreets(int k) {
+		engine.copyTotalsTo(totals);
+		return engine.top(totals, k);
+	}
+
+	private void carry(ByteBuffer chunk, int start, int end) {
+		final int length = end - start;
+		if (carryLength + length > carry.length) {
+			carry = Arrays.copyOf(carry, Math.max(carry.length * 2, carryLength + length));
+		}
+		for (int i = start; i < end; i++) {
+			carry[carryLength++] = chunk.get(i);
+		}
+	}
+}
@@ -0,0 +1,1748 @@
+package ca.kijiji.contest;
+
+import java.io.Closeable;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.EventFactory;
+import com.lmax.disruptor.ExceptionHandler;
+import com.lmax.disruptor.LifecycleAware;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.Sequence;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.WorkHandler;
+import com.lmax.disruptor.WorkerPool;
+import com.lmax.disruptor.YieldingWaitStrategy;
+
+/**
+ * Owns the read buffer, work queue, worker threads, street dictionary and totals for aggregations, so separate
+ * engines can run concurrently and repeated runs on one engine reuse its threads, ids and arrays. Workers total
+ * fines by street id, and the merged totals are put into a map by name once per street.
+ */
+public class ParkingTicketsEngine implements Closeable {
+
+	static final int DEFAULT_BUFFER_SIZE = 2 * 1024 * 1024;
+
+	// files are mapped in chunks no larger than a ByteBuffer can address, then cut into newline aligned blocks
+	static final long MAP_CHUNK_SIZE = 1024 * 1024 * 1024;
+	static final int MAP_BLOCK_SIZE = 1024 * 1024;
+	// appended rows are parsed on the calling thread below this size, in worker slices above it
+	static final int PARALLEL_APPEND_SIZE = 256 * 1024;
+
+	// 4-cores with HyperThreading has 8 'availableProcessors()'
+	static final int DEFAULT_WORKERS = Math.max(4, Runtime.getRuntime().availableProcessors() - 1);
+	static final int DEFAULT_CAPACITY = 13 * 1024;
+
+	/**
+	 * How the reader hands stream blocks to the workers. Mapped files are split up front into a queue,
+	 * except with FORK_JOIN.
+	 */
+	public enum Pipeline {
+		/** ArrayBlockingQueue of new int[] block descriptors */
+		QUEUE,
+		/** QUEUE for streams, mapped files are split recursively on a ForkJoinPool of all processors */
+		FORK_JOIN,
+		/** Disruptor ring of preallocated block descriptors, idle workers wait on a lock */
+		DISRUPTOR_BLOCKING,
+		/** idle workers spin, then yield, then sleep */
+		DISRUPTOR_SLEEPING,
+		/** idle workers spin, then yield, using a core each */
+		DISRUPTOR_YIELDING,
+		/** idle workers spin, using a core each */
+		DISRUPTOR_BUSY_SPIN;
+
+		WaitStrategy newWaitStrategy() {
+			switch (this) {
+			case DISRUPTOR_BLOCKING: return new BlockingWaitStrategy();
+			case DISRUPTOR_SLEEPING: return new SleepingWaitStrategy();
+			case DISRUPTOR_YIELDING: return new YieldingWaitStrategy();
+			case DISRUPTOR_BUSY_SPIN: return new BusySpinWaitStrategy();
+			default: return null;
+			}
+		}
+	}
+
+	final byte[] data;
+	final ByteBuffer[] dataChunks;
+	final int nWorkers;
+	final int SIZE;
+
+	// use small blocking queue size to limit read-ahead for higher cache hits
+	final ArrayBlockingQueue<int[]> byteArrayQueue;
+	final int[] END_OF_WORK = new int[0];
+	// blocks handed out but not yet parsed, the reader waits for these before recycling the buffer
+	final AtomicInteger pendingBlocks = new AtomicInteger();
+	// used instead of byteArrayQueue by the Disruptor pipelines
+	final RingBuffer<Block> ringBuffer;
+
+	// used instead of the workers for mapped files by FORK_JOIN, with totals and normalizers recycled between tasks and runs
+	final ForkJoinPool forkJoinPool;
+	final ConcurrentLinkedQueue<StreetTotals> idleTotals = new ConcurrentLinkedQueue<>();
+	final ConcurrentLinkedQueue<StreetNormalizer> idleNormalizers = new ConcurrentLinkedQueue<>();
+
+	// ids of the street names of every run, and the merged totals of the last run by name and group
+	final StreetDictionary streets;
+	final OpenBytesLongHashMap merged;
+	final GroupTotals mergedGroups = new GroupTotals();
+	// of the current run, set by report
+	GroupBy[] groupBys = GroupBy.NONE;
+
+	// long-lived daemon threads run the workers, then the merges and gathers of each run
+	final Worker[] workers;
+	final ThreadPoolExecutor executor;
+
+	// null unless instrumented, read once per run into runListener
+	volatile StatsListener listener;
+	StatsListener runListener;
+	// nanoTime of the start of the run and of the end of its last phase
+	long runStart;
+	long phaseEnd;
+	// whether the run filled merged, which otherwise still holds an earlier run's totals
+	boolean runMerged;
+
+	public ParkingTicketsEngine() {
+		this(DEFAULT_WORKERS, DEFAULT_CAPACITY, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param nWorkers number of parsing threads
+	 * @param capacity initial number of streets in the dictionary and the totals, grown as needed
+	 * @param bufferSize bytes of read-ahead for stream input, should hold several 128 KB reads
+	 */
+	public ParkingTicketsEngine(int nWorkers, int capacity, int bufferSize) {
+		this(nWorkers, capacity, bufferSize, Pipeline.QUEUE);
+	}
+
+	public ParkingTicketsEngine(int nWorkers, int capacity, int bufferSize, Pipeline pipeline) {
+		this.nWorkers = nWorkers;
+		this.SIZE = capacity;
+		data = new byte[bufferSize];
+		dataChunks = new ByteBuffer[] { ByteBuffer.wrap(data) };
+		byteArrayQueue = new ArrayBlockingQueue<int[]>(2 * nWorkers - 1, false);
+		// same read-ahead as the queue, rounded up to the power of 2 the ring needs
+		final WaitStrategy waitStrategy = pipeline.newWaitStrategy();
+		ringBuffer = waitStrategy == null ? null
+			: RingBuffer.createSingleProducer(Block.FACTORY, Integer.highestOneBit(2 * nWorkers - 1) * 2, waitStrategy);
+		forkJoinPool = pipeline == Pipeline.FORK_JOIN ? new ForkJoinPool() : null;
+		streets = new StreetDictionary(capacity);
+		merged = new OpenBytesLongHashMap(capacity, true);
+
+		workers = new Worker[nWorkers];
+		for (int k = 0; k < nWorkers; k++) {
+			workers[k] = new Worker(capacity, END_OF_WORK, streets);
+		}
+
+		executor = new ThreadPoolExecutor(nWorkers, nWorkers, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+			new ThreadFactory() {
+				final AtomicInteger count = new AtomicInteger();
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "worker"+ count.getAndIncrement());
+					t.setDaemon(true);
+					return t;
+				}});
+		executor.prestartAllCoreThreads();
+	}
+
+	/**
+	 * Stops the worker threads, the engine can't be used afterwards.
+	 */
+	public void close() {
+		executor.shutdown();
+		if (forkJoinPool != null) {
+			forkJoinPool.shutdown();
+		}
+	}
+
+    /**
+     * An engine runs one aggregation at a time, use separate engines for concurrent aggregations.
+     *
+     * @throws ArithmeticException if a street's total overflows an int, see sortStreetsByProfitabilityLong
+     */
+    public synchronized SortedMap<String, Integer> sortStreetsByProfitability(InputStream parkingTicketsStream) {
+    	startRun();
+    	return endRun(orderInts(aggregateStream(parkingTicketsStream)));
+    }
+
+    public synchronized SortedMap<String, Long> sortStreetsByProfitabilityLong(InputStream parkingTicketsStream) {
+    	startRun();
+    	return endRun(orderLongs(aggregateStream(parkingTicketsStream)));
+    }
+
+    /**
+     * @return the k most profitable streets, most profitable first
+     */
+    public synchronized List<Map.Entry<String, Long>> topStreets(InputStream parkingTicketsStream, int k) {
+    	startRun();
+    	return endRun(top(aggregateStream(parkingTicketsStream), k));
+    }
+
+    /**
+     * @throws ArithmeticException if a street's total overflows an int, see sortStreetsByProfitabilityLong
+     */
+    public synchronized SortedMap<String, Integer> sortStreetsByProfitability(Path parkingTicketsFile) throws IOException {
+    	startRun();
+    	return endRun(orderInts(aggregate(parkingTicketsFile)));
+    }
+
+    public synchronized SortedMap<String, Long> sortStreetsByProfitabilityLong(Path parkingTicketsFile) throws IOException {
+    	startRun();
+    	return endRun(orderLongs(aggregate(parkingTicketsFile)));
+    }
+
+    public synchronized List<Map.Entry<String, Long>> topStreets(Path parkingTicketsFile, int k) throws IOException {
+    	startRun();
+    	return endRun(top(aggregate(parkingTicketsFile), k));
+    }
+
+    /**
+     * Totals several files as one, such as the yearly files of a directory, see ticketFiles. Plain files
+     * are mapped and read at once, each with its own header row.
+     *
+     * @throws ArithmeticException if a street's total overflows an int, see sortStreetsByProfitabilityLong
+     */
+    public synchronized SortedMap<String, Integer> sortStreetsByProfitability(Collection<Path> parkingTicketsFiles) throws IOException {
+    	startRun();
+    	return endRun(orderInts(aggregate(parkingTicketsFiles)));
+    }
+
+    public synchronized SortedMap<String, Long> sortStreetsByProfitabilityLong(Collection<Path> parkingTicketsFiles) throws IOException {
+    	startRun();
+    	return endRun(orderLongs(aggregate(parkingTicketsFiles)));
+    }
+
+    public synchronized List<Map.Entry<String, Long>> topStreets(Collection<Path> parkingTicketsFiles, int k) throws IOException {
+    	startRun();
+    	return endRun(top(aggregate(parkingTicketsFiles), k));
+    }
+
+    public synchronized ParkingTicketsReport report(Collection<Path> parkingTicketsFiles, GroupBy... groupBys) throws IOException {
+    	startRun();
+    	useGroups(groupBys);
+    	try {
+    		return endRun(report(aggregate(parkingTicketsFiles)));
+    	}
+    	finally {
+    		useGroups(GroupBy.NONE);
+    	}
+    }
+
+    /**
+     * Approximates the k most profitable streets, most profitable first, in memory fixed by k however many
+     * distinct streets the stream has. Streets aren't added to the engine's dictionary, see HeavyHitters for
+     * the bounds.
+     */
+    public synchronized List<StreetEstimate> topStreetsApproximate(InputStream parkingTicketsStream, int k) {
+    	if (k < 0) {
+    		throw new IllegalArgumentException("k = "+ k);
+    	}
+    	startRun();
+    	useSketches(HeavyHitters.forTop(k));
+    	try {
+    		parse(parkingTicketsStream);
+    		return endRun(topApproximate(k));
+    	}
+    	catch (IOException e) {
+    		throw new IllegalStateException(e);
+    	}
+    	finally {
+    		useSketches(null);
+    	}
+    }
+
+    /**
+     * Parses the file's text even when it has a TicketsCache, as the cache holds every street.
+     */
+    public synchronized List<StreetEstimate> topStreetsApproximate(Path parkingTicketsFile, int k) throws IOException {
+    	if (k < 0) {
+    		throw new IllegalArgumentException("k = "+ k);
+    	}
+    	startRun();
+    	useSketches(HeavyHitters.forTop(k));
+    	try {
+    		try (InputStream decompressed = openCompressed(parkingTicketsFile)) {
+    			if (decompressed != null) {
+    				parse(decompressed);
+    			}
+    			else {
+    				parse(parkingTicketsFile);
+    			}
+    		}
+    		return endRun(topApproximate(k));
+    	}
+    	finally {
+    		useSketches(null);
+    	}
+    }
+
+    /**
+     * Sends the timings and counts of the runs that start from now on to listener, null to stop. Without
+     * a listener, runs don't read the clock.
+     */
+    public void setStatsListener(StatsListener listener) {
+    	this.listener = listener;
+    }
+
+    final void startRun() {
+    	runListener = listener;
+    	runMerged = false;
+    	final boolean timed = runListener != null;
+    	for (Worker w : workers) {
+    		w.resetCounts(timed);
+    	}
+    	if (timed) {
+    		runStart = phaseEnd = System.nanoTime();
+    	}
+    }
+
+    final <T> T endRun(T result) {
+    	final StatsListener listener = runListener;
+    	if (listener != null) {
+    		for (int t = 0; t < nWorkers; t++) {
+    			listener.worker(t, workers[t].rows, workers[t].bytes, workers[t].waitNanos);
+    		}
+    		if (runMerged) {
+    			final long[] probes = merged.probeLengths();
+    			listener.probes(merged.size(), probes[0], (int) probes[1]);
+    		}
+    		listener.run(System.nanoTime() - runStart);
+    		runListener = null;
+    	}
+    	return result;
+    }
+
+    /**
+     * Totals the streets and groups the fines by each of groupBys, in one pass over the stream.
+     */
+    public synchronized ParkingTicketsReport report(InputStream parkingTicketsStream, GroupBy... groupBys) {
+    	startRun();
+    	useGroups(groupBys);
+    	try {
+    		return endRun(report(aggregateStream(parkingTicketsStream)));
+    	}
+    	finally {
+    		useGroups(GroupBy.NONE);
+    	}
+    }
+
+    public synchronized ParkingTicketsReport report(Path parkingTicketsFile, GroupBy... groupBys) throws IOException {
+    	startRun();
+    	useGroups(groupBys);
+    	try {
+    		return endRun(report(aggregate(parkingTicketsFile)));
+    	}
+    	finally {
+    		useGroups(GroupBy.NONE);
+    	}
+    }
+
+    /**
+     * @return the merged totals, valid until the next run
+     */
+    OpenBytesLongHashMap aggregate(InputStream parkingTicketsStream) throws IOException {
+    	parse(parkingTicketsStream);
+    	return merge();
+    }
+
+    /**
+     * aggregate for the InputStream methods, which declare no IOException.
+     *
+     * @throws IllegalStateException caused by the IOException if reading the stream failed
+     */
+    OpenBytesLongHashMap aggregateStream(InputStream parkingTicketsStream) {
+    	try {
+    		return aggregate(parkingTicketsStream);
+    	}
+    	catch (IOException e) {
+    		throw new IllegalStateException(e);
+    	}
+    }
+
+    /**
+     * Reads the file's TicketsCache when it has one that isn't stale. Otherwise streams .gz and .zip files
+     * through the reader, which decompresses while the workers parse, and maps other files.
+     */
+    OpenBytesLongHashMap aggregate(Path parkingTicketsFile) throws IOException {
+    	final TicketsCache cache = TicketsCache.open(parkingTicketsFile);
+    	if (cache != null) {
+    		return aggregate(cache);
+    	}
+    	try (InputStream decompressed = openCompressed(parkingTicketsFile)) {
+    		if (decompressed != null) {
+    			return aggregate(decompressed);
+    		}
+    	}
+    	if (forkJoinPool != null) {
+    		return forkJoin(parkingTicketsFile);
+    	}
+    	parse(parkingTicketsFile);
+    	return merge();
+    }
+
+    /**
+     * Reads the files' text, whether or not they have a TicketsCache.
+     */
+    OpenBytesLongHashMap aggregate(Collection<Path> parkingTicketsFiles) throws IOException {
+    	parse(parkingTicketsFiles);
+    	return merge();
+    }
+
+    /**
+     * Parses the file once into a TicketsCache next to it, which later runs on the file read instead of
+     * its text while the file is unchanged.
+     *
+     * @return false if the cache would pass 2 GB, and isn't written
+     */
+    public synchronized boolean writeCache(Path parkingTicketsFile) throws IOException {
+    	startRun();
+    	final TicketColumns[] parts = new TicketColumns[nWorkers];
+    	for (int t = 0; t < nWorkers; t++) {
+    		parts[t] = workers[t].totals.rows = new TicketColumns();
+    	}
+    	try {
+    		try (InputStream decompressed = openCompressed(parkingTicketsFile)) {
+    			if (decompressed != null) {
+    				parse(decompressed);
+    			}
+    			else {
+    				parse(parkingTicketsFile);
+    			}
+    		}
+    		return endRun(TicketsCache.write(parkingTicketsFile, streets, parts));
+    	}
+    	finally {
+    		for (Worker w : workers) {
+    			w.totals.rows = null;
+    		}
+    	}
+    }
+
+    /**
+     * Totals the cache's rows, each worker a slice of them, and merges them like parsed rows.
+     */
+    OpenBytesLongHashMap aggregate(final TicketsCache cache) {
+    	mark("Pre-initialization");
+
+    	// the cache's street numbers as this engine's ids
+    	final int[] ids = new int[cache.names.length];
+    	for (int n = 0; n < ids.length; n++) {
+    		final byte[] name = cache.names[n];
+    		ids[n] = streets.id(name, 0, name.length, ByteKeyArena.hash(name, 0, name.length));
+    	}
+
+    	final ArrayList<Future<?>> futures = new ArrayList<>(nWorkers);
+    	for (int t = 0; t < nWorkers; t++) {
+    		final StreetTotals totals = workers[t].totals;
+    		final int from = (int) ((long) cache.rows * t / nWorkers);
+    		final int to = (int) ((long) cache.rows * (t+1) / nWorkers);
+    		totals.clear();
+    		futures.add(executor.submit(new Runnable() { public void run() {
+    				cache.addRows(from, to, ids, totals);
+    			}}));
+    	}
+    	awaitAll(futures);
+
+    	mark("Cache read");
+
+    	return merge();
+    }
+
+    /**
+     * @return the decompressed contents of a .gz or .zip file, or null for other files
+     */
+    static InputStream openCompressed(Path parkingTicketsFile) throws IOException {
+    	if (!isCompressed(parkingTicketsFile)) {
+    		return null;
+    	}
+    	final String name = parkingTicketsFile.getFileName().toString().toLowerCase();
+    	if (name.endsWith(".gz")) {
+    		return new GZIPInputStream(Files.newInputStream(parkingTicketsFile), 64 * 1024);
+    	}
+    	return new ZipInputStream(new BufferedInputStream(Files.newInputStream(parkingTicketsFile), 64 * 1024));
+    }
+
+    static boolean isCompressed(Path parkingTicketsFile) {
+    	final String name = parkingTicketsFile.getFileName().toString().toLowerCase();
+    	return name.endsWith(".gz") || name.endsWith(".zip");
+    }
+
+    /**
+     * @return the .csv, .gz and .zip files of directory, by name, such as the yearly files of the tickets
+     */
+    public static List<Path> ticketFiles(Path directory) throws IOException {
+    	final ArrayList<Path> files = new ArrayList<>();
+    	try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+    		for (Path file : stream) {
+    			final String name = file.getFileName().toString().toLowerCase();
+    			if ((name.endsWith(".csv") || isCompressed(file)) && Files.isRegularFile(file)) {
+    				files.add(file);
+    			}
+    		}
+    	}
+    	Collections.sort(files);
+    	return files;
+    }
+
+    /**
+     * Totals the stream into the workers' totals, which are left unmerged.
+     */
+    void parse(InputStream parkingTicketsStream) throws IOException {
+    	mark("Pre-initialization");
+
+    	clearWorkers();
+    	read(parkingTicketsStream);
+    }
+
+    /**
+     * Adds the stream to the workers' totals as they are.
+     *
+     * @throws IOException the reader's, once the workers are done with the blocks read before it
+     */
+    void read(InputStream parkingTicketsStream) throws IOException {
+    	if (ringBuffer != null) {
+    		parseRing(parkingTicketsStream);
+    		return;
+    	}
+
+    	final ArrayList<Future<?>> futures = startWorkers(byteArrayQueue, dataChunks, pendingBlocks, null);
+
+    	mark("Initialization");
+
+    	// read on the calling thread rather than starting a reader thread per call
+    	final Reader reader = new Reader(parkingTicketsStream, byteArrayQueue, null);
+    	try {
+    		reader.run();
+    	}
+    	finally {
+    		awaitAll(futures);
+    	}
+    	if (reader.failure != null) {
+    		throw reader.failure;
+    	}
+
+    	mark("Workers done");
+    }
+
+    /**
+     * Runs the workers as a WorkerPool on the ring until the reader's blocks are drained. A pool is made
+     * per run, and its processors must have left before the next run publishes: a halted processor woken
+     * by a new block would parse it without checking for the halt.
+     */
+    void parseRing(InputStream parkingTicketsStream) throws IOException {
+    	final AtomicReference<Throwable> failure = new AtomicReference<>();
+    	final ExceptionHandler exceptionHandler = new ExceptionHandler() {
+    		public void handleEventException(Throwable ex, long sequence, Object event) {
+    			failure.compareAndSet(null, ex);
+    		}
+    		public void handleOnStartException(Throwable ex) {
+    			failure.compareAndSet(null, ex);
+    		}
+    		public void handleOnShutdownException(Throwable ex) {
+    			failure.compareAndSet(null, ex);
+    		}};
+
+    	final CountDownLatch started = new CountDownLatch(nWorkers);
+    	for (Worker w : workers) {
+    		w.prepare(dataChunks, pendingBlocks, started);
+    	}
+    	final WorkerPool<Block> pool = new WorkerPool<Block>(ringBuffer, ringBuffer.newBarrier(), exceptionHandler, workers);
+    	final Sequence[] sequences = pool.getWorkerSequences();
+    	ringBuffer.addGatingSequences(sequences);
+
+    	final ArrayList<Future<?>> processors = new ArrayList<>(nWorkers);
+    	pool.start(new Executor() {
+    		public void execute(Runnable processor) {
+    			processors.add(executor.submit(processor));
+    		}});
+    	// a processor that starts after the halt would clear it and never leave, so wait for them even when interrupted
+    	boolean interrupted = false;
+    	for (;;) {
+    		try {
+    			started.await();
+    			break;
+    		}
+    		catch (InterruptedException e) {
+    			interrupted = true;
+    		}
+    	}
+    	if (interrupted) {
+    		Thread.currentThread().interrupt();
+    	}
+
+    	mark("Initialization");
+
+    	final Reader reader = new Reader(parkingTicketsStream, null, ringBuffer);
+    	try {
+    		reader.run();
+    	}
+    	finally {
+    		pool.drainAndHalt();
+    		awaitAll(processors);
+    		for (Sequence sequence : sequences) {
+    			ringBuffer.removeGatingSequence(sequence);
+    		}
+    	}
+
+    	final Throwable cause = failure.get();
+    	if (cause != null) {
+    		throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+    	}
+    	if (reader.failure != null) {
+    		throw reader.failure;
+    	}
+
+    	mark("Workers done");
+    }
+
+    /**
+     * Memory-maps the file and hands newline aligned regions of it directly to the workers,
+     * without a reader thread or copying into the shared data buffer.
+     */
+    void parse(Path parkingTicketsFile) throws IOException {
+    	mark("Pre-initialization");
+
+    	clearWorkers();
+    	final ArrayList<int[]> regions = new ArrayList<>();
+    	final ByteBuffer[] mappedChunks = mapRows(parkingTicketsFile, regions);
+    	useSchema(readSchema(mappedChunks, regions));
+    	final ArrayList<int[]> blocks = new ArrayList<>();
+    	splitBlocks(mappedChunks, regions, 0, blocks);
+
+    	mark("Mapped");
+
+    	// all work is known up front so the queue never blocks
+    	final ArrayBlockingQueue<int[]> blockQueue = new ArrayBlockingQueue<int[]>(blocks.size() + nWorkers, false);
+    	blockQueue.addAll(blocks);
+    	for (int t = 0; t < nWorkers; t++) {
+    		blockQueue.add(END_OF_WORK);
+    	}
+
+    	final ArrayList<Future<?>> futures = startWorkers(blockQueue, mappedChunks, new AtomicInteger(blocks.size()), null);
+
+    	mark("Initialization");
+
+    	awaitAll(futures);
+
+    	mark("Workers done");
+    }
+
+    /**
+     * Splits the regions of mapped chunks into blocks of whole rows, of MAP_BLOCK_SIZE but for the last
+     * and for rows longer than that.
+     *
+     * @param blocks receives {start, end, chunk index + firstChunk} of each block
+     */
+    static void splitBlocks(ByteBuffer[] mappedChunks, ArrayList<int[]> regions, int firstChunk, ArrayList<int[]> blocks) {
+    	for (int[] region : regions) {
+    		final ByteBuffer chunk = mappedChunks[region[2]];
+    		final int chunk_end = region[1];
+    		for (int block_start = region[0], block_end; block_start < chunk_end; block_start = block_end) {
+    			block_end = block_start + MAP_BLOCK_SIZE;
+    			if (block_end < chunk_end) {
+    				while (block_end > block_start && chunk.get(block_end - 1) != '\n') {
+    					block_end--;
+    				}
+    				// a row longer than a block is extended to its end instead
+    				if (block_end == block_start) {
+    					block_end = block_start + MAP_BLOCK_SIZE;
+    					while (block_end < chunk_end && chunk.get(block_end++) != '\n') {}
+    				}
+    			}
+    			else {
+    				block_end = chunk_end;
+    			}
+    			blocks.add(new int[] {block_start, block_end, region[2] + firstChunk});
+    		}
+    	}
+    }
+
+    /**
+     * Maps the plain files together and queues their blocks a block of each file in turn, so the workers
+     * fault in several files at once. Each file's header row is skipped, and locates the columns of its
+     * rows. Compressed files are then streamed one after another. All add to the workers' totals.
+     */
+    void parse(Collection<Path> parkingTicketsFiles) throws IOException {
+    	mark("Pre-initialization");
+
+    	clearWorkers();
+    	final ArrayList<ByteBuffer> chunks = new ArrayList<>();
+    	final ArrayList<CsvSchema> schemas = new ArrayList<>();
+    	final ArrayList<ArrayList<int[]>> fileBlocks = new ArrayList<>();
+    	final ArrayList<Path> compressed = new ArrayList<>();
+    	int blockCount = 0;
+    	for (Path file : parkingTicketsFiles) {
+    		if (isCompressed(file)) {
+    			compressed.add(file);
+    			continue;
+    		}
+    		final ArrayList<int[]> regions = new ArrayList<>();
+    		final ByteBuffer[] mappedChunks = mapRows(file, regions);
+    		final CsvSchema schema = readSchema(mappedChunks, regions);
+    		final ArrayList<int[]> blocks = new ArrayList<>();
+    		splitBlocks(mappedChunks, regions, chunks.size(), blocks);
+    		for (ByteBuffer chunk : mappedChunks) {
+    			chunks.add(chunk);
+    			schemas.add(schema);
+    		}
+    		fileBlocks.add(blocks);
+    		blockCount += blocks.size();
+    	}
+
+    	final ArrayBlockingQueue<int[]> blockQueue = new ArrayBlockingQueue<int[]>(blockCount + nWorkers, false);
+    	for (int b = 0; blockQueue.size() < blockCount; b++) {
+    		for (ArrayList<int[]> blocks : fileBlocks) {
+    			if (b < blocks.size()) {
+    				blockQueue.add(blocks.get(b));
+    			}
+    		}
+    	}
+    	for (int t = 0; t < nWorkers; t++) {
+    		blockQueue.add(END_OF_WORK);
+    	}
+
+    	mark("Mapped");
+
+    	final ArrayList<Future<?>> futures = startWorkers(blockQueue, chunks.toArray(new ByteBuffer[chunks.size()]),
+    		new AtomicInteger(blockCount), schemas.toArray(new CsvSchema[schemas.size()]));
+
+    	mark("Initialization");
+
+    	awaitAll(futures);
+
+    	mark("Workers done");
+
+    	for (Path file : compressed) {
+    		try (InputStream decompressed = openCompressed(file)) {
+    			read(decompressed);
+    		}
+    	}
+    }
+
+    /**
+     * Maps the file in chunks no larger than a ByteBuffer can address.
+     *
+     * @param regions receives {start, end, chunk index} of the whole rows of each chunk, without the header row
+     */
+    static ByteBuffer[] mapRows(Path parkingTicketsFile, ArrayList<int[]> regions) throws IOException {
+    	final ArrayList<ByteBuffer> chunks = new ArrayList<>();
+
+    	try (FileChannel channel = FileChannel.open(parkingTicketsFile, StandardOpenOption.READ)) {
+    		final long size = channel.size();
+    		for (long position = 0; position < size; ) {
+    			final int length = (int) Math.min(MAP_CHUNK_SIZE, size - position);
+    			final ByteBuffer chunk = channel.map(MapMode.READ_ONLY, position, length);
+
+    			int chunk_start = 0;
+    			int chunk_end = length;
+
+    			// don't offer the first (header) row
+    			if (position == 0) {
+    				while (chunk_start < chunk_end && chunk.get(chunk_start++) != '\n') {}
+    			}
+
+    			// a row straddling the chunk end is mapped again at the start of the next chunk
+    			if (position + length < size) {
+    				while (chunk_end > chunk_start && chunk.get(--chunk_end) != '\n') {}
+    				chunk_end++;
+    			}
+
+    			regions.add(new int[] {chunk_start, chunk_end, chunks.size()});
+    			chunks.add(chunk);
+    			position += chunk_end;
+    		}
+    	}
+    	return chunks.toArray(new ByteBuffer[chunks.size()]);
+    }
+
+    /**
+     * @return the schema of the mapped file's header row, sampling the rows of its first block
+     */
+    static CsvSchema readSchema(ByteBuffer[] mappedChunks, ArrayList<int[]> regions) {
+    	final int[] first = regions.isEmpty() ? null : regions.get(0);
+    	if (first == null || first[0] == first[1]) {
+    		return CsvSchema.DEFAULT;
+    	}
+    	return CsvSchema.read(mappedChunks[first[2]], 0, Math.min(first[1], MAP_BLOCK_SIZE));
+    }
+
+    /**
+     * Splits the rows of each mapped chunk recursively, idle threads stealing the halves, and adds up the
+     * totals of the halves on the way back up.
+     *
+     * @return the merged totals, which stay valid until the next run
+     */
+    OpenBytesLongHashMap forkJoin(Path parkingTicketsFile) throws IOException {
+    	mark("Pre-initialization");
+
+    	final ArrayList<int[]> regions = new ArrayList<>();
+    	final ByteBuffer[] mappedChunks = mapRows(parkingTicketsFile, regions);
+    	final CsvSchema schema = readSchema(mappedChunks, regions);
+
+    	mark("Mapped");
+
+    	StreetTotals total = null;
+    	for (int[] region : regions) {
+    		final StreetTotals totals = forkJoinPool.invoke(new RowsTask(mappedChunks[region[2]], region[0], region[1], schema));
+    		total = total == null ? totals : mergeTotals(totals, total);
+    	}
+    	if (total == null) {
+    		total = takeTotals();
+    	}
+    	final OpenBytesLongHashMap map0 = totalsByName(total);
+    	recycleTotals(total);
+
+    	mark("Fork/join merged");
+
+    	return map0;
+    }
+
+    final StreetTotals takeTotals() {
+    	StreetTotals totals = idleTotals.poll();
+    	if (totals == null) {
+    		totals = new StreetTotals(SIZE);
+    	}
+    	totals.groups.use(groupBys);
+    	return totals;
+    }
+
+    final void recycleTotals(StreetTotals totals) {
+    	totals.clear();
+    	idleTotals.offer(totals);
+    }
+
+    /**
+     * Adds the shorter totals to the longer and recycles them.
+     *
+     * @return the longer totals
+     */
+    final StreetTotals mergeTotals(StreetTotals totals1, StreetTotals totals2) {
+    	final StreetTotals from = totals1.size() < totals2.size() ? totals1 : totals2;
+    	final StreetTotals to = from == totals1 ? totals2 : totals1;
+    	from.addTo(to);
+    	recycleTotals(from);
+    	return to;
+    }
+
+    /**
+     * Copies the groups of totals to mergedGroups.
+     *
+     * @return merged, holding the totals by street name until the next run
+     */
+    final OpenBytesLongHashMap totalsByName(StreetTotals totals) {
+    	merged.clear();
+    	runMerged = true;
+    	totals.putTo(streets, merged);
+    	mergedGroups.use(totals.groups.groupBys);
+    	mergedGroups.clear();
+    	totals.groups.addTo(mergedGroups);
+    	return merged;
+    }
+
+    /**
+     * Totals the rows of [start, end), parsing them directly when no larger than a block.
+     */
+    class RowsTask extends RecursiveTask<StreetTotals> {
+    	private static final long serialVersionUID = 1L;
+
+    	final ByteBuffer data;
+    	final int start;
+    	final int end;
+    	final CsvSchema schema;
+
+    	RowsTask(ByteBuffer data, int start, int end, CsvSchema schema) {
+    		this.data = data;
+    		this.start = start;
+    		this.end = end;
+    		this.schema = schema;
+    	}
+
+    	@Override
+    	protected StreetTotals compute() {
+    		if (end - start > MAP_BLOCK_SIZE) {
+    			int mid = (start + end) >>> 1;
+    			while (mid < end && data.get(mid++) != '\n') {}
+    			if (mid < end) {
+    				final RowsTask first = new RowsTask(data, start, mid, schema);
+    				first.fork();
+    				final StreetTotals second = new RowsTask(data, mid, end, schema).compute();
+    				return mergeTotals(first.join(), second);
+    			}
+    		}
+    		final StreetTotals totals = takeTotals();
+    		StreetNormalizer names = idleNormalizers.poll();
+    		if (names == null) {
+    			names = new StreetNormalizer(streets);
+    		}
+    		parseRows(data, start, end, schema, names, totals);
+    		idleNormalizers.offer(names);
+    		return totals;
+    	}
+    }
+
+    final ArrayList<Future<?>> startWorkers(BlockingQueue<int[]> queue, ByteBuffer[] chunks, AtomicInteger pending, CsvSchema[] schemas) {
+    	final ArrayList<Future<?>> futures = new ArrayList<>(nWorkers);
+    	for (Worker w : workers) {
+    		w.prepare(queue, chunks, pending, schemas);
+    		futures.add(executor.submit(w));
+    	}
+    	return futures;
+    }
+
+    /**
+     * Waits for every task, then rethrows the first failure. An interrupt doesn't stop the wait, as the
+     * tasks still use the engine's buffers, and is restored once they are done.
+     */
+    static final void awaitAll(ArrayList<Future<?>> futures) {
+    	RuntimeException failure = null;
+    	boolean interrupted = false;
+		for (Future<?> f : futures) {
+			for (;;) {
+				try {
+					f.get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+					}
+					break;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+    }
+
+    /**
+     * Makes the next runs' workers and tasks also group fines by groupBys.
+     */
+    final void useGroups(GroupBy[] groupBys) {
+    	this.groupBys = groupBys;
+    	for (Worker w : workers) {
+    		w.totals.groups.use(groupBys);
+    	}
+    }
+
+    /**
+     * Makes the workers keep copies of sketch instead of totals by id, or stop for null.
+     */
+    final void useSketches(HeavyHitters sketch) {
+    	for (int t = 0; t < nWorkers; t++) {
+    		workers[t].totals.sketch = sketch == null || t == 0 ? sketch : new HeavyHitters(sketch.width, sketch.depth, sketch.capacity);
+    	}
+    }
+
+    /**
+     * Merges the workers' summaries into the first's.
+     */
+    final List<StreetEstimate> topApproximate(int k) {
+    	final HeavyHitters sketch = workers[0].totals.sketch;
+    	for (int t = 1; t < nWorkers; t++) {
+    		workers[t].totals.sketch.addTo(sketch);
+    	}
+
+    	mark("Sketches merged");
+
+    	return sketch.top(k);
+    }
+
+    /**
+     * Points the workers at the columns of the next rows, once the blocks of the previous ones are parsed.
+     */
+    final void useSchema(CsvSchema schema) {
+    	if (schema.equals(workers[0].schema)) {
+    		return;
+    	}
+    	while (pendingBlocks.get() > 0) {
+    		Thread.yield();
+    	}
+    	for (Worker w : workers) {
+    		w.schema = schema;
+    	}
+    }
+
+    /**
+     * Adds the rows of [start, end) to the workers' totals as they are, for ParkingTicketsAggregator.
+     */
+    void accumulate(final ByteBuffer data, final int start, final int end) {
+    	if (end - start < PARALLEL_APPEND_SIZE) {
+    		workers[0].parse(data, start, end);
+    		return;
+    	}
+
+    	final ArrayList<Future<?>> futures = new ArrayList<>(nWorkers);
+    	int slice_end = start;
+    	for (int t = 0; t < nWorkers; t++) {
+    		final Worker w = workers[t];
+    		final int slice_start = slice_end;
+    		if (t < nWorkers - 1) {
+    			slice_end = Math.max(slice_start, start + (int) ((long) (end - start) * (t+1) / nWorkers));
+    			while (slice_end < end && data.get(slice_end++) != '\n') {}
+    		}
+    		else {
+    			slice_end = end;
+    		}
+    		final int slice_stop = slice_end;
+    		futures.add(executor.submit(new Runnable() { public void run() {
+    				w.parse(data, slice_start, slice_stop);
+    			}}));
+    	}
+    	awaitAll(futures);
+    }
+
+    /**
+     * Totals copies of the workers' totals into dest by name, which is cleared first.
+     */
+    void copyTotalsTo(OpenBytesLongHashMap dest) {
+    	final StreetTotals total = new StreetTotals(streets.size());
+    	for (Worker w : workers) {
+    		w.totals.addTo(total);
+    	}
+    	dest.clear();
+    	total.putTo(streets, dest);
+    }
+
+    void clearWorkers() {
+    	for (Worker w : workers) {
+    		w.totals.clear();
+    	}
+    }
+
+    /**
+     * Adds every worker's totals into the first's, partitioned rather than pairwise: each thread owns an
+     * equal range of the street ids and of each group's keys, and adds that range of every worker in one
+     * round, so no thread waits on another's merge and each range stays in its thread's cache.
+     */
+    OpenBytesLongHashMap merge() {
+    	final StreetTotals dest = workers[0].totals;
+    	int size = 0;
+    	for (Worker w : workers) {
+    		size = Math.max(size, w.totals.size());
+    	}
+    	dest.grow(size);
+
+    	if (nWorkers > 1) {
+    		final ArrayList<Future<?>> futures = new ArrayList<>(nWorkers);
+    		for (int t = 0; t < nWorkers; t++) {
+    			final int part = t;
+    			final int from = (int) ((long) size * t / nWorkers);
+    			final int to = (int) ((long) size * (t+1) / nWorkers);
+    			futures.add(executor.submit(new Runnable() { public void run() {
+    					for (int k = 1; k < nWorkers; k++) {
+    						final StreetTotals totals = workers[k].totals;
+    						totals.addTo(dest, from, to);
+    						totals.groups.addTo(dest.groups, part, nWorkers);
+    					}
+    				}}));
+    		}
+    		awaitAll(futures);
+    	}
+
+    	mark("Parallel merged");
+
+    	return totalsByName(dest);
+    }
+
+    ParkingTicketsReport report(final OpenBytesLongHashMap map0) {
+    	final EnumMap<GroupBy, SortedMap<Integer, FineStats>> groups = new EnumMap<>(GroupBy.class);
+    	for (int g = 0; g < mergedGroups.groupBys.length; g++) {
+    		groups.put(mergedGroups.groupBys[g], mergedGroups.stats(g));
+    	}
+    	return new ParkingTicketsReport(orderLongs(map0), groups);
+    }
+
+    /**
+     * Selects the k best of each slice of map0's slots in parallel, then the k best of those, without
+     * ordering the rest.
+     */
+    List<Map.Entry<String, Long>> top(final OpenBytesLongHashMap map0, final int k) {
+    	if (k < 0) {
+    		throw new IllegalArgumentException("k = "+ k);
+    	}
+    	final int capacity = map0.capacity();
+    	final int[][] heaps = new int[nWorkers][];
+    	final int[] counts = new int[nWorkers];
+    	final ArrayList<Future<?>> selects = new ArrayList<>(nWorkers);
+    	for (int t = 0; t < nWorkers; t++) {
+    		final int start = capacity * t / nWorkers;
+    		final int end = capacity * (t+1) / nWorkers;
+    		final int slice = t;
+
+    		selects.add(executor.submit(new Runnable() { public void run() {
+    				heaps[slice] = new int[Math.min(k, end - start)];
+    				counts[slice] = map0.topRange(start, end, heaps[slice], k);
+    			}}));
+    	}
+    	awaitAll(selects);
+
+    	final int[] heap = new int[Math.min(k, map0.size())];
+    	int count = 0;
+    	for (int t = 0; t < nWorkers; t++) {
+    		for (int i = 0; i < counts[t]; i++) {
+    			count = map0.offerTop(heaps[t][i], heap, count, k);
+    		}
+    	}
+    	map0.sortTop(heap, count);
+
+    	final ArrayList<Map.Entry<String, Long>> top = new ArrayList<>(count);
+    	for (int i = 0; i < count; i++) {
+    		top.add(new AbstractMap.SimpleImmutableEntry<>(map0.keyAt(heap[i]), map0.valueAt(heap[i])));
+    	}
+
+    	mark("Parallel selected");
+
+    	return top;
+    }
+
+    @SuppressWarnings("unchecked")
+    SortedMap<String, Integer> orderInts(final OpenBytesLongHashMap map0) {
+    	return (SortedMap<String, Integer>) order(map0, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    SortedMap<String, Long> orderLongs(final OpenBytesLongHashMap map0) {
+    	return (SortedMap<String, Long>) order(map0, false);
+    }
+
+    /**
+     * Copies map0's entries into a SortedStreetMap, so map0 can be cleared for the next run.
+     *
+     * @param ints whether values are Integers rather than Longs
+     * @throws ArithmeticException if ints and a total doesn't fit in an int
+     */
+    SortedStreetMap<?> order(final OpenBytesLongHashMap map0, final boolean ints) {
+    	final int[] ranked = sortSlots(map0, false);
+    	final int[] byName = sortSlots(map0, true);
+
+    	// byName holds slots, the map wants positions in ranked
+    	final int[] positions = new int[map0.capacity()];
+    	for (int i = 0; i < ranked.length; i++) {
+    		positions[ranked[i]] = i;
+    	}
+    	for (int i = 0; i < byName.length; i++) {
+    		byName[i] = positions[byName[i]];
+    	}
+
+    	@SuppressWarnings("rawtypes")
+    	final Map.Entry[] entries = new Map.Entry[ranked.length];
+    	final ArrayList<Future<?>> builds = new ArrayList<>(nWorkers);
+    	for (int t = 0; t < nWorkers; t++) {
+    		final int start = ranked.length * t / nWorkers;
+    		final int end = ranked.length * (t+1) / nWorkers;
+
+    		builds.add(executor.submit(new Runnable() { public void run() {
+    				for (int i = start; i < end; i++) {
+    					final String key = map0.keyAt(ranked[i]);
+    					final long value = map0.valueAt(ranked[i]);
+    					if (!ints) {
+    						entries[i] = new AbstractMap.SimpleImmutableEntry<String, Long>(key, value);
+    					}
+    					else if ((int) value == value) {
+    						entries[i] = new AbstractMap.SimpleImmutableEntry<String, Integer>(key, (int) value);
+    					}
+    					else {
+    						throw new ArithmeticException("Total of "+ value +" for "+ key +" overflows an int");
+    					}
+    				}
+    			}}));
+    	}
+    	awaitAll(builds);
+
+    	mark("Parallel ordered");
+
+    	@SuppressWarnings("unchecked")
+    	final SortedStreetMap<?> sorted = new SortedStreetMap<Object>(entries, byName);
+    	return sorted;
+    }
+
+    /**
+     * Sorts map0's occupied slots by key, or by value descending then key. Each worker sorts a slice,
+     * then the slices are merged in pyramid manner.
+     */
+    int[] sortSlots(final OpenBytesLongHashMap map0, final boolean byKey) {
+    	final int size = map0.size();
+    	int[] src = new int[size];
+    	int[] dest = new int[size];
+    	map0.slots(src);
+
+    	final int[] bounds = new int[nWorkers + 1];
+    	for (int t = 0; t <= nWorkers; t++) {
+    		bounds[t] = size * t / nWorkers;
+    	}
+
+    	final ArrayList<Future<?>> sorts = new ArrayList<>(nWorkers);
+    	for (int t = 0; t < nWorkers; t++) {
+    		final int[] slots = src;
+    		final int[] tmp = dest;
+    		final int from = bounds[t];
+    		final int to = bounds[t + 1];
+    		sorts.add(executor.submit(new Runnable() { public void run() {
+    				map0.sortSlots(slots, from, to, tmp, byKey);
+    			}}));
+    	}
+    	awaitAll(sorts);
+
+    	for (int step = 1; step < nWorkers; step *= 2) {
+    		final ArrayList<Future<?>> merges = new ArrayList<>();
+    		for (int j = 0; j < nWorkers; j += step*2) {
+    			final int[] runs = src;
+    			final int[] merged = dest;
+    			final int from = bounds[j];
+    			final int mid = bounds[Math.min(j + step, nWorkers)];
+    			final int to = bounds[Math.min(j + step*2, nWorkers)];
+    			// a run without a partner is copied over as is
+    			merges.add(executor.submit(new Runnable() { public void run() {
+    					map0.mergeSlots(runs, from, mid, to, merged, byKey);
+    				}}));
+    		}
+    		awaitAll(merges);
+
+    		final int[] swap = src;
+    		src = dest;
+    		dest = swap;
+    	}
+    	return src;
+    }
+
+    /**
+     * Preallocated ring slot describing a block of a chunk, like the int[] blocks of the queue.
+     */
+    static final class Block {
+    	int start;
+    	int end;
+    	int chunk;
+
+    	static final EventFactory<Block> FACTORY = new EventFactory<Block>() {
+    		public Block newInstance() {
+    			return new Block();
+    		}};
+    }
+
+    /**
+     * Offers blocks on either byteArrayQueue or ringBuffer, the other being null. Reads until the stream
+     * ends rather than trusting available(), which is 0 or partial for compressed and network streams.
+     * The entries of a ZipInputStream are read one after another, each with its own header row.
+     */
+    class Reader implements Runnable {
+    	static final int READ_SIZE = 128 * 1024;
+
+    	final InputStream parkingTicketsStream;
+    	final ArrayBlockingQueue<int[]> byteArrayQueue;
+    	final RingBuffer<Block> ringBuffer;
+
+    	// data[block_start, read_end) is read but not yet offered, kept across zip entries
+    	int read_end;
+    	int block_start;
+    	// rethrown by the caller once the workers have drained the blocks read before it
+    	IOException failure;
+
+    	Reader(InputStream parkingTicketsStream, ArrayBlockingQueue<int[]> byteArrayQueue, RingBuffer<Block> ringBuffer) {
+    		this.parkingTicketsStream = parkingTicketsStream;
+    		this.byteArrayQueue = byteArrayQueue;
+    		this.ringBuffer = ringBuffer;
+    	}
+
+    	public void run() {
+        	try {
+        		if (parkingTicketsStream instanceof ZipInputStream) {
+        			final ZipInputStream zipStream = (ZipInputStream) parkingTicketsStream;
+        			for (ZipEntry entry; (entry = zipStream.getNextEntry()) != null; ) {
+        				if (!entry.isDirectory()) {
+        					readBlocks(zipStream);
+        				}
+        			}
+        		}
+        		else {
+        			readBlocks(parkingTicketsStream);
+        		}
+        	}
+        	catch (IOException e) {
+        		failure = e;
+    		}
+        	finally {
+        		// release the workers even when reading failed or was interrupted, the ring is drained instead
+        		boolean interrupted = false;
+        		for (int t = 0; byteArrayQueue != null && t < nWorkers; t++) {
+        			for (;;) {
+        				try {
+        					byteArrayQueue.put(END_OF_WORK);
+        					break;
+        				}
+        				catch (InterruptedException e) {
+        					interrupted = true;
+        				}
+        			}
+        		}
+        		if (interrupted) {
+        			Thread.currentThread().interrupt();
+        		}
+        	}
+    	}
+
+    	/**
+    	 * Offers the rows of the stream after its header row, the last one even without a newline. The
+    	 * header row locates the columns of the rows after it.
+    	 */
+    	private void readBlocks(InputStream stream) throws IOException {
+    		boolean header = true;
+    		boolean eof = false;
+    		while (!eof) {
+    			if (read_end + READ_SIZE > data.length) {
+    				// blocks still being parsed would be overwritten
+    				while (pendingBlocks.get() > 0) {
+    					Thread.yield();
+    				}
+    				System.arraycopy(data, block_start, data, 0, read_end - block_start);
+    				read_end -= block_start;
+    				block_start = 0;
+    				if (read_end + READ_SIZE > data.length) {
+    					throw new IllegalStateException("Row of over "+ read_end +" bytes doesn't fit the read buffer");
+    				}
+    			}
+
+    			// fill a whole read, decompressing streams return much less per call
+    			final int read_start = read_end;
+    			for (int read_amount; read_end - read_start < READ_SIZE; read_end += read_amount) {
+    				read_amount = stream.read(data, read_end, READ_SIZE - (read_end - read_start));
+    				if (read_amount < 0) {
+    					eof = true;
+    					break;
+    				}
+    			}
+
+    			// don't offer the first (header) row
+    			if (header) {
+    				int header_end = block_start;
+    				while (header_end < read_end && data[header_end] != '\n') { header_end++; }
+    				if (header_end == read_end && !eof) {
+    					continue;
+    				}
+    				mark("First read");
+    				if (header_end + 1 < read_end) {
+    					useSchema(CsvSchema.read(dataChunks[0], block_start, read_end));
+    				}
+    				block_start = Math.min(header_end + 1, read_end);
+    				header = false;
+    			}
+
+    			int block_end = read_end;
+    			if (!eof) {
+    				while (block_end > block_start && data[block_end - 1] != '\n') { block_end--; }
+    			}
+    			if (block_end > block_start) {
+    				offerBlocks(block_start, block_end);
+    				block_start = block_end;
+    			}
+    		}
+    	}
+
+    	/**
+    	 * Subdivides block to minimize latency and improve work balancing.
+    	 */
+    	private void offerBlocks(final int block_start, final int block_end) {
+    		int sub_end = block_start;
+    		int sub_start;
+    		for (int k = 1; k <= nWorkers; k++) {
+    			sub_start = sub_end;
+    			if (k < nWorkers) {
+    				sub_end = block_start + (block_end - block_start) * k / nWorkers;
+    				while (sub_end > sub_start && data[sub_end - 1] != '\n') { sub_end--; }
+    			}
+    			else {
+    				sub_end = block_end;
+    			}
+    			pendingBlocks.incrementAndGet();
+    			offer(sub_start, sub_end);
+    		}
+    	}
+
+    	private void offer(int start, int end) {
+    		if (ringBuffer != null) {
+    			final long sequence = ringBuffer.next();
+    			final Block block = ringBuffer.get(sequence);
+    			block.start = start;
+    			block.end = end;
+    			block.chunk = 0;
+    			ringBuffer.publish(sequence);
+    			return;
+    		}
+    		// the block is counted as pending, so it's queued even when interrupted
+    		boolean interrupted = false;
+    		for (;;) {
+    			try {
+    				byteArrayQueue.put(new int[] {start, end, 0});
+    				break;
+    			}
+    			catch (InterruptedException e) {
+    				interrupted = true;
+    			}
+    		}
+    		if (interrupted) {
+    			Thread.currentThread().interrupt();
+    		}
+    	}
+    }
+
+    static class Worker implements Runnable, WorkHandler<Block>, LifecycleAware {
+    	private final int[] END_OF_WORK;
+    	private final StreetNormalizer names;
+    	private final StreetTotals totals;
+    	private BlockingQueue<int[]> queue;
+    	private ByteBuffer[] chunks;
+    	private AtomicInteger pending;
+    	private CountDownLatch started;
+    	// by chunk, for chunks of files with different columns, null to read all with schema
+    	private CsvSchema[] schemas;
+    	// changed only while no blocks are pending, the queue or ring publishes it with the next block
+    	CsvSchema schema = CsvSchema.DEFAULT;
+    	// of the run, with the time waited for blocks when timed
+    	long rows;
+    	long bytes;
+    	long waitNanos;
+    	private boolean timed;
+    	private long lastEventEnd;
+
+    	Worker(int capacity, int[] END_OF_WORK, StreetDictionary streets) {
+    		this.END_OF_WORK = END_OF_WORK;
+    		names = new StreetNormalizer(streets);
+    		totals = new StreetTotals(capacity);
+    	}
+
+    	/**
+    	 * Points the worker at the next input, called before it's submitted. Its totals are kept, so several
+    	 * inputs can add to them.
+    	 */
+    	final void prepare(BlockingQueue<int[]> queue, ByteBuffer[] chunks, AtomicInteger pending, CsvSchema[] schemas) {
+    		this.queue = queue;
+    		this.chunks = chunks;
+    		this.pending = pending;
+    		this.schemas = schemas;
+    	}
+
+    	/**
+    	 * Prepares the worker to run as a WorkerPool handler, counting down started once its processor runs.
+    	 */
+    	final void prepare(ByteBuffer[] chunks, AtomicInteger pending, CountDownLatch started) {
+    		prepare(null, chunks, pending, null);
+    		this.started = started;
+    	}
+
+    	final void resetCounts(boolean timed) {
+    		rows = bytes = waitNanos = 0;
+    		this.timed = timed;
+    	}
+
+    	public final void onStart() {
+    		if (timed) {
+    			lastEventEnd = System.nanoTime();
+    		}
+    		started.countDown();
+    	}
+
+    	final void parse(ByteBuffer data, int start, int end) {
+    		parse(data, start, end, schema);
+    	}
+
+    	final void parse(ByteBuffer data, int start, int end, CsvSchema schema) {
+    		rows += parseRows(data, start, end, schema, names, totals);
+    		bytes += end - start;
+    	}
+
+    	public final void onShutdown() {
+    	}
+
+        /**
+         * worker parallel worker takes blocks of bytes read (or mapped) and processes them
+         */
+    	public final void run() {
+    		final BlockingQueue<int[]> queue = this.queue;
+    		final ByteBuffer[] chunks = this.chunks;
+    		final AtomicInteger pending = this.pending;
+    		final CsvSchema[] schemas = this.schemas;
+    		final boolean timed = this.timed;
+    		// after a failed block the worker still takes blocks until its END_OF_WORK, so the reader's
+    		// pending count drains and no END_OF_WORK is left queued for the next run
+    		RuntimeException failure = null;
+    		// the reader counts on every worker taking its END_OF_WORK, so interrupts are restored on leaving
+    		boolean interrupted = false;
+
+    		for (;;) {
+    			final long waitStart = timed ? System.nanoTime() : 0;
+    			int[] block_start_end;
+    			for (;;) {
+    				try {
+    					block_start_end = queue.poll(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    					break;
+    				}
+    				catch (InterruptedException e) {
+    					interrupted = true;
+    				}
+    			}
+    			if (timed) {
+    				waitNanos += System.nanoTime() - waitStart;
+    			}
+
+    			if (block_start_end == END_OF_WORK) {
+    				break;
+    			}
+    			final int chunk = block_start_end[2];
+    			try {
+    				if (failure == null) {
+    					parse(chunks[chunk], block_start_end[0], block_start_end[1], schemas == null ? schema : schemas[chunk]);
+    				}
+    			}
+    			catch (RuntimeException e) {
+    				failure = e;
+    			}
+    			finally {
+    				pending.decrementAndGet();
+    			}
+    		}
+    		if (interrupted) {
+    			Thread.currentThread().interrupt();
+    		}
+    		if (failure != null) {
+    			throw failure;
+    		}
+        }
+
+    	/**
+    	 * Disruptor pipelines hand blocks to the worker here instead of through its queue, the time since the
+    	 * last block is its wait.
+    	 */
+    	public final void onEvent(Block block) {
+    		if (timed) {
+    			waitNanos += System.nanoTime() - lastEventEnd;
+    		}
+    		try {
+    			parse(chunks[block.chunk], block.start, block.end);
+    		}
+    		finally {
+    			pending.decrementAndGet();
+    			if (timed) {
+    				lastEventEnd = System.nanoTime();
+    			}
+    		}
+    	}
+    }
+
+    // a byte repeated across a long, for finding it 8 bytes at a time
+    static final long COMMAS = 0x2c2c2c2c2c2c2c2cL;
+    static final long NEWLINES = 0x0a0a0a0a0a0a0a0aL;
+    static final long LOW_BITS = 0x7f7f7f7f7f7f7f7fL;
+
+    /**
+     * Adds the fines of the rows of [block_start, block_end) to totals by street id, reading the columns
+     * schema locates. Separators are found 8 bytes at a time: each long read from the block gives a mask
+     * of its commas and newlines, whose bits are walked in order to count columns, so the bytes of a field
+     * are only visited when its column is read. Past the last column read, only newlines are masked.
+     * Rows with a numeric fine are also added to the groups of totals, and to its rows when a cache is being
+     * written, with the starts of their fields kept for each row. While totals has a sketch, fines are
+     * added to it by name instead.
+     *
+     * @return number of rows
+     */
+    static final int parseRows(final ByteBuffer block, final int block_start, final int block_end, final CsvSchema schema, final StreetNormalizer names, final StreetTotals totals) {
+    	// the first byte of a big endian long is its highest
+    	final ByteBuffer data = block.order() == ByteOrder.BIG_ENDIAN ? block : block.duplicate().order(ByteOrder.BIG_ENDIAN);
+    	final int fineColumn = schema.fineColumn;
+    	final int locationColumn = schema.locationColumn;
+    	final GroupTotals groups = totals.groups;
+    	final GroupBy[] groupBys = groups.groupBys;
+    	final int[] groupColumns = new int[groupBys.length];
+    	int lastColumn = Math.max(fineColumn, locationColumn);
+    	for (int g = 0; g < groupBys.length; g++) {
+    		groupColumns[g] = groupBys[g].column(schema);
+    		lastColumn = Math.max(lastColumn, groupColumns[g]);
+    	}
+    	final TicketColumns rows = totals.rows;
+    	final HeavyHitters sketch = totals.sketch;
+    	if (rows != null) {
+    		lastColumn = Math.max(lastColumn, Math.max(schema.codeColumn, Math.max(schema.dateColumn, schema.timeColumn)));
+    	}
+    	// field starts by column, up to the one after the last column read
+    	final int[] starts = groupBys.length > 0 || rows != null ? new int[lastColumn + 2] : null;
+    	int count = 0;
+    	int row_start = block_start;
+    	// process block
+    	for (; row_start < block_end; count++) {
+    		int column = 0;
+    		int field_start = row_start;
+    		if (schema.skips(data, row_start, block_end)) {
+    			column = schema.separators.length;
+    			field_start += schema.skip;
+    			for (int c = 0; starts != null && c < column; c++) {
+    				starts[c] = c == 0 ? row_start : row_start + schema.separators[c - 1] + 1;
+    			}
+    		}
+    		int fine_start = -1;
+    		int location_start = 0;
+    		int location_end = 0;
+    		int row_end = -1;
+
+    		row:
+    		for (int i = field_start; i < block_end; i += 8) {
+    			final long word = wordAt(data, i, block_end);
+    			final long newlines = matches(word ^ NEWLINES);
+    			long separators = column <= lastColumn ? newlines | matches(word ^ COMMAS) : newlines;
+    			while (separators != 0) {
+    				final long separator = Long.highestOneBit(separators);
+    				final int at = i + (Long.numberOfLeadingZeros(separator) >>> 3);
+    				if (starts != null) {
+    					starts[column] = field_start;
+    				}
+    				if (column == fineColumn) {
+    					fine_start = field_start;
+    				}
+    				else if (column == locationColumn) {
+    					location_start = field_start;
+    					location_end = at;
+    				}
+    				if ((separator & newlines) != 0) {
+    					row_end = at;
+    					break row;
+    				}
+    				field_start = at + 1;
+    				separators ^= separator;
+    				if (++column > lastColumn) {
+    					separators &= newlines;
+    				}
+    			}
+    		}
+    		// the last row of the block may have no newline
+    		if (row_end < 0) {
+    			if (starts != null) {
+    				starts[column] = field_start;
+    			}
+    			if (column == fineColumn) {
+    				fine_start = field_start;
+    			}
+    			else if (column == locationColumn) {
+    				location_start = field_start;
+    				location_end = block_end;
+    			}
+    			row_end = block_end;
+    		}
+
+    		if (fine_start >= 0) {
+    			int fine = 0;
+    			int i = fine_start;
+    			for (; i < row_end && (char)data.get(i) >= '0' && (char)data.get(i) <= '9'; i++) {
+    				fine = fine * 10 + (char)data.get(i) - '0';
+    			}
+    			int id = -1;
+    			if (fine > 0 && location_end > location_start) {
+    				if (sketch != null) {
+    					sketch.add(data, location_start, location_end, fine);
+    				}
+    				else {
+    					id = names.streetId(data, location_start, location_end);
+    					if (id >= 0) {
+    						totals.add(id, fine);
+    					}
+    				}
+    			}
+    			for (int g = 0; i > fine_start && g < groupColumns.length; g++) {
+    				final int key = groupBys[g].key(number(data, starts, groupColumns[g], column, row_end));
+    				if (key >= 0) {
+    					groups.add(g, key, fine);
+    				}
+    			}
+    			if (rows != null && i > fine_start) {
+    				rows.add(id, fine, number(data, starts, schema.codeColumn, column, row_end),
+    					number(data, starts, schema.dateColumn, column, row_end), number(data, starts, schema.timeColumn, column, row_end));
+    			}
+    		}
+    		row_start = row_end + 1;
+    	}
+    	return count;
+    }
+
+    /**
+     * @return the number in column c of a row whose last field is column and ends at row_end, -1 if there's none
+     */
+    static final int number(final ByteBuffer data, final int[] starts, final int c, final int column, final int row_end) {
+    	if (c < 0 || c > column) {
+    		return -1;
+    	}
+    	return GroupBy.number(data, starts[c], c < column ? starts[c + 1] - 1 : row_end);
+    }
+
+    /**
+     * @return the 8 bytes at i of a big endian buffer as a long, with 0 bytes past end
+     */
+    static final long wordAt(final ByteBuffer data, final int i, final int end) {
+    	if (i + 8 <= end) {
+    		return data.getLong(i);
+    	}
+    	if (i + 8 <= data.limit()) {
+    		return data.getLong(i) & -1L << ((i + 8 - end) << 3);
+    	}
+    	long word = 0;
+    	for (int k = i; k < i + 8; k++) {
+    		word = word << 8 | (k < end ? data.get(k) & 0xff : 0);
+    	}
+    	return word;
+    }
+
+    /**
+     * @return 0x80 in each byte of x that is 0, and 0 in the others, without carries between bytes
+     */
+    static final long matches(final long x) {
+    	return ~(((x & LOW_BITS) + LOW_BITS) | x | LOW_BITS);
+    }
+
+    /**
+     * Ends a phase of the run for its listener.
+     */
+    final void mark(String phase) {
+    	final StatsListener listener = runListener;
+    	if (listener != null) {
+    		final long now = System.nanoTime();
+    		listener.phase(phase, now - phaseEnd);
+    		phaseEnd = now;
+    	}
+    }
+}
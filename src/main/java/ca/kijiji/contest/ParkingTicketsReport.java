@@ -0,0 +1,37 @@
+package ca.kijiji.contest;
+
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * The street totals and fine groups of one pass over a tickets file, see ParkingTicketsEngine.report.
+ */
+public class ParkingTicketsReport {
+
+	private final SortedMap<String, Long> streets;
+	private final Map<GroupBy, SortedMap<Integer, FineStats>> groups;
+
+	ParkingTicketsReport(SortedMap<String, Long> streets, Map<GroupBy, SortedMap<Integer, FineStats>> groups) {
+		this.streets = streets;
+		this.groups = groups;
+	}
+
+	/**
+	 * @return totals ordered like sortStreetsByProfitabilityLong
+	 */
+	public SortedMap<String, Long> streets() {
+		return streets;
+	}
+
+	/**
+	 * @return the stats of the keys of groupBy that had fines, by key
+	 * @throws IllegalArgumentException if the report wasn't grouped by groupBy
+	 */
+	public SortedMap<Integer, FineStats> group(GroupBy groupBy) {
+		final SortedMap<Integer, FineStats> group = groups.get(groupBy);
+		if (group == null) {
+			throw new IllegalArgumentException("Not grouped by "+ groupBy);
+		}
+		return group;
+	}
+}
@@ -0,0 +1,171 @@
+package ca.kijiji.contest;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+
+/**
+ * Immutable street totals ordered by total descending, then name. Entries are held in that order in one
+ * array, so iteration only walks the array, and a second array of their positions ordered by name gives
+ * O(log n) lookups. Sub maps share both arrays.
+ *
+ * The order isn't defined for names that aren't in the map, so comparator() and the sub map methods throw
+ * IllegalArgumentException for them.
+ */
+public class SortedStreetMap<V> extends AbstractMap<String, V> implements SortedMap<String, V> {
+
+	private final Map.Entry<String, V>[] entries;
+	private final int[] byName;
+	private final int from;
+	private final int to;
+	private final Set<Map.Entry<String, V>> entrySet = new EntrySet();
+
+	/**
+	 * @param entries in order of total descending, then name
+	 * @param byName positions in entries ordered by name
+	 */
+	SortedStreetMap(Map.Entry<String, V>[] entries, int[] byName) {
+		this(entries, byName, 0, entries.length);
+	}
+
+	private SortedStreetMap(Map.Entry<String, V>[] entries, int[] byName, int from, int to) {
+		this.entries = entries;
+		this.byName = byName;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * @return position of the name in entries, or -1
+	 */
+	private int positionOf(Object key) {
+		if (!(key instanceof String)) {
+			return -1;
+		}
+		final String name = (String) key;
+		int lo = 0;
+		int hi = byName.length - 1;
+		while (lo <= hi) {
+			final int mid = (lo + hi) >>> 1;
+			final int position = byName[mid];
+			final int c = entries[position].getKey().compareTo(name);
+			if (c < 0) {
+				lo = mid + 1;
+			}
+			else if (c > 0) {
+				hi = mid - 1;
+			}
+			else {
+				return position >= from && position < to ? position : -1;
+			}
+		}
+		return -1;
+	}
+
+	private int requirePositionOf(String key) {
+		final int position = positionOf(key);
+		if (position < 0) {
+			throw new IllegalArgumentException("Not in map: "+ key);
+		}
+		return position;
+	}
+
+	@Override
+	public V get(Object key) {
+		final int position = positionOf(key);
+		return position >= 0 ? entries[position].getValue() : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return positionOf(key) >= 0;
+	}
+
+	@Override
+	public int size() {
+		return to - from;
+	}
+
+	@Override
+	public Comparator<? super String> comparator() {
+		return new Comparator<String>() {
+			public int compare(String k1, String k2) {
+				return Integer.compare(requirePositionOf(k1), requirePositionOf(k2));
+			}};
+	}
+
+	@Override
+	public String firstKey() {
+		if (from == to) {
+			throw new NoSuchElementException();
+		}
+		return entries[from].getKey();
+	}
+
+	@Override
+	public String lastKey() {
+		if (from == to) {
+			throw new NoSuchElementException();
+		}
+		return entries[to - 1].getKey();
+	}
+
+	@Override
+	public SortedMap<String, V> headMap(String toKey) {
+		return new SortedStreetMap<>(entries, byName, from, requirePositionOf(toKey));
+	}
+
+	@Override
+	public SortedMap<String, V> tailMap(String fromKey) {
+		return new SortedStreetMap<>(entries, byName, requirePositionOf(fromKey), to);
+	}
+
+	@Override
+	public SortedMap<String, V> subMap(String fromKey, String toKey) {
+		final int start = requirePositionOf(fromKey);
+		final int end = requirePositionOf(toKey);
+		if (start > end) {
+			throw new IllegalArgumentException(fromKey +" is after "+ toKey);
+		}
+		return new SortedStreetMap<>(entries, byName, start, end);
+	}
+
+	@Override
+	public Set<Map.Entry<String, V>> entrySet() {
+		return entrySet;
+	}
+
+	private final class EntrySet extends AbstractSet<Map.Entry<String, V>> {
+		@Override
+		public Iterator<Map.Entry<String, V>> iterator() {
+			return new Iterator<Map.Entry<String, V>>() {
+				int next = from;
+
+				public boolean hasNext() {
+					return next < to;
+				}
+
+				public Map.Entry<String, V> next() {
+					if (next >= to) {
+						throw new NoSuchElementException();
+					}
+					return entries[next++];
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+	}
+}
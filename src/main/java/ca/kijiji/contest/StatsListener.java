@@ -0,0 +1,32 @@
+package ca.kijiji.contest;
+
+/**
+ * Receives the timings and counts of an engine's runs, see ParkingTicketsEngine.setStatsListener. Times are
+ * System.nanoTime intervals. Methods are called on the thread running the engine, the worker counts once
+ * the workers are done with the run, so they needn't be fast, but a listener shared by engines is called
+ * by their runs at once.
+ */
+public interface StatsListener {
+
+	/**
+	 * A phase of a run ended, such as "Mapped" or "Parallel merged", nanos after the phase before it.
+	 */
+	void phase(String name, long nanos);
+
+	/**
+	 * A worker's share of a run: rows and bytes of the blocks it parsed, and the time it waited for them.
+	 * Runs on mapped files by FORK_JOIN or from a TicketsCache don't parse blocks on the workers.
+	 */
+	void worker(int worker, long rows, long bytes, long waitNanos);
+
+	/**
+	 * Entries of the map of merged street totals, and the slots they were probed past their home slot,
+	 * in total and at most.
+	 */
+	void probes(int entries, long probes, int maxProbes);
+
+	/**
+	 * A whole run ended, nanos after it started.
+	 */
+	void run(long nanos);
+}
@@ -0,0 +1,120 @@
+package ca.kijiji.contest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps what a StatsListener receives across runs: a LatencyHistogram per phase and of whole runs, the rows,
+ * bytes and waits of each worker, and the probes of the merged maps. Can be shared by engines.
+ */
+public class StatsRecorder implements StatsListener {
+
+	private final Map<String, LatencyHistogram> phases = new LinkedHashMap<>();
+	private final LatencyHistogram runs = new LatencyHistogram();
+	// by worker
+	private long[] rows = new long[0];
+	private long[] bytes = new long[0];
+	private long[] waitNanos = new long[0];
+	private long entries;
+	private long probes;
+	private int maxProbes;
+
+	public synchronized void phase(String name, long nanos) {
+		LatencyHistogram phase = phases.get(name);
+		if (phase == null) {
+			phase = new LatencyHistogram();
+			phases.put(name, phase);
+		}
+		phase.record(nanos);
+	}
+
+	public synchronized void worker(int worker, long rows, long bytes, long waitNanos) {
+		if (worker >= this.rows.length) {
+			this.rows = Arrays.copyOf(this.rows, worker + 1);
+			this.bytes = Arrays.copyOf(this.bytes, worker + 1);
+			this.waitNanos = Arrays.copyOf(this.waitNanos, worker + 1);
+		}
+		this.rows[worker] += rows;
+		this.bytes[worker] += bytes;
+		this.waitNanos[worker] += waitNanos;
+	}
+
+	public synchronized void probes(int entries, long probes, int maxProbes) {
+		this.entries += entries;
+		this.probes += probes;
+		this.maxProbes = Math.max(this.maxProbes, maxProbes);
+	}
+
+	public synchronized void run(long nanos) {
+		runs.record(nanos);
+	}
+
+	/**
+	 * @return a copy of the histogram of the phase's nanoseconds, empty for phases not seen
+	 */
+	public synchronized LatencyHistogram phase(String name) {
+		final LatencyHistogram copy = new LatencyHistogram();
+		final LatencyHistogram phase = phases.get(name);
+		if (phase != null) {
+			copy.add(phase);
+		}
+		return copy;
+	}
+
+	/**
+	 * @return a copy of the histogram of the runs' nanoseconds
+	 */
+	public synchronized LatencyHistogram runs() {
+		final LatencyHistogram copy = new LatencyHistogram();
+		copy.add(runs);
+		return copy;
+	}
+
+	public synchronized long rows(int worker) {
+		return worker < rows.length ? rows[worker] : 0;
+	}
+
+	public synchronized long bytes(int worker) {
+		return worker < bytes.length ? bytes[worker] : 0;
+	}
+
+	public synchronized long waitNanos(int worker) {
+		return worker < waitNanos.length ? waitNanos[worker] : 0;
+	}
+
+	/**
+	 * @return mean slots probed past an entry's home slot in the merged maps
+	 */
+	public synchronized double meanProbes() {
+		return entries == 0 ? 0 : (double) probes / entries;
+	}
+
+	public synchronized int maxProbes() {
+		return maxProbes;
+	}
+
+	public synchronized void reset() {
+		phases.clear();
+		runs.reset();
+		rows = new long[0];
+		bytes = new long[0];
+		waitNanos = new long[0];
+		entries = probes = maxProbes = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("runs: ").append(runs).append('\n');
+		for (Map.Entry<String, LatencyHistogram> phase : phases.entrySet()) {
+			sb.append(phase.getKey()).append(": ").append(phase.getValue()).append('\n');
+		}
+		for (int w = 0; w < rows.length; w++) {
+			sb.append("worker").append(w).append(": rows=").append(rows[w]).append(" bytes=").append(bytes[w])
+				.append(" waitNanos=").append(waitNanos[w]).append('\n');
+		}
+		sb.append("probes: mean=").append(meanProbes()).append(" max=").append(maxProbes);
+		return sb.toString();
+	}
+}
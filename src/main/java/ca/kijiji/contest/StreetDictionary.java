@@ -0,0 +1,129 @@
+package ca.kijiji.contest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Assigns each distinct street name a dense int id, so workers can total into arrays indexed by id and
+ * merging is an element-wise add. One dictionary is shared by an engine's workers and kept across its runs,
+ * so ids stay valid in the workers' caches.
+ *
+ * Lookups read the table without locking. A name that isn't found is added under the dictionary's lock,
+ * after looking it up again, so each name gets one id however many workers meet it at once. Its bytes are
+ * written before its id is published in the table, and a grown table is published as a whole.
+ */
+final class StreetDictionary {
+
+	private static final float LOAD_FACTOR = 0.5f;
+
+	// id + 1 per slot, 0 for an empty slot
+	private volatile AtomicIntegerArray slots;
+	// names and their ByteKeyArena.hash by id
+	private volatile byte[][] names;
+	private volatile int[] hashes;
+	private volatile int size;
+
+	StreetDictionary(int capacity) {
+		final int slotCount = Integer.highestOneBit(Math.max(16, (int) (capacity / LOAD_FACTOR)) - 1) << 1;
+		slots = new AtomicIntegerArray(slotCount);
+		names = new byte[Math.max(capacity, 16)][];
+		hashes = new int[names.length];
+	}
+
+	/**
+	 * @return number of ids handed out, all ids are below it
+	 */
+	final int size() {
+		return size;
+	}
+
+	/**
+	 * @param hash ByteKeyArena.hash of the name
+	 * @return id of name[start, start + len), added if it's new
+	 */
+	final int id(final byte[] name, final int start, final int len, final int hash) {
+		final int id = find(slots, name, start, len, hash);
+		return id >= 0 ? id : add(name, start, len, hash);
+	}
+
+	/**
+	 * @return the name of id, which mustn't be modified
+	 */
+	final byte[] name(final int id) {
+		return names[id];
+	}
+
+	final int hash(final int id) {
+		return hashes[id];
+	}
+
+	final String toString(final int id) {
+		return new String(names[id], StandardCharsets.ISO_8859_1);
+	}
+
+	private final int find(final AtomicIntegerArray slots, final byte[] name, final int start, final int len, final int hash) {
+		final int mask = slots.length() - 1;
+		for (int cur = hash & mask; ; cur = (cur + 1) & mask) {
+			final int slot = slots.get(cur);
+			if (slot == 0) {
+				return -1;
+			}
+			final int id = slot - 1;
+			if (hashes[id] == hash && equals(names[id], name, start, len)) {
+				return id;
+			}
+		}
+	}
+
+	private synchronized int add(final byte[] name, final int start, final int len, final int hash) {
+		int id = find(slots, name, start, len, hash);
+		if (id >= 0) {
+			return id;
+		}
+
+		id = size;
+		if (id == names.length) {
+			hashes = Arrays.copyOf(hashes, id * 2);
+			names = Arrays.copyOf(names, id * 2);
+		}
+		hashes[id] = hash;
+		names[id] = Arrays.copyOfRange(name, start, start + len);
+
+		AtomicIntegerArray slots = this.slots;
+		if (id + 1 > slots.length() * LOAD_FACTOR) {
+			slots = new AtomicIntegerArray(slots.length() * 2);
+			for (int i = 0; i < id; i++) {
+				insert(slots, i);
+			}
+			insert(slots, id);
+			this.slots = slots;
+		}
+		else {
+			insert(slots, id);
+		}
+		size = id + 1;
+		return id;
+	}
+
+	private final void insert(final AtomicIntegerArray slots, final int id) {
+		final int mask = slots.length() - 1;
+		int cur = hashes[id] & mask;
+		while (slots.get(cur) != 0) {
+			cur = (cur + 1) & mask;
+		}
+		slots.set(cur, id + 1);
+	}
+
+	private static boolean equals(final byte[] key, final byte[] name, final int start, final int len) {
+		if (key.length != len) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			if (key[i] != name[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
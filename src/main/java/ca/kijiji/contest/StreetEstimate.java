@@ -0,0 +1,55 @@
+package ca.kijiji.contest;
+
+/**
+ * Approximate total of a street, see ParkingTicketsEngine.topStreetsApproximate. The street's fines add up
+ * to between total() - error() and total().
+ */
+public final class StreetEstimate {
+
+	private final String street;
+	private final long total;
+	private final long error;
+
+	StreetEstimate(String street, long total, long error) {
+		this.street = street;
+		this.total = total;
+		this.error = error;
+	}
+
+	public String street() {
+		return street;
+	}
+
+	/**
+	 * @return bound on the street's total, never below it
+	 */
+	public long total() {
+		return total;
+	}
+
+	/**
+	 * @return most the total can be above the street's
+	 */
+	public long error() {
+		return error;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof StreetEstimate)) {
+			return false;
+		}
+		final StreetEstimate other = (StreetEstimate) o;
+		return street.equals(other.street) && total == other.total && error == other.error;
+	}
+
+	@Override
+	public int hashCode() {
+		return (street.hashCode() * 31 + (int) (total ^ total >>> 32)) * 31 + (int) (error ^ error >>> 32);
+	}
+
+	@Override
+	public String toString() {
+		return street +"="+ total +" error="+ error;
+	}
+}
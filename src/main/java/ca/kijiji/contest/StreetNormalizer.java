@@ -0,0 +1,245 @@
+package ca.kijiji.contest;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Extracts the canonical street name of a location2 field in one pass, without allocating. Addresses are
+ * NUMBER NAME SUFFIX DIRECTION, each part but the name optional, so the name is the words from the first
+ * one that isn't a number or noise up to the first suffix, direction or number. Bytes are folded through a
+ * table, letters to upper case, and each word walks a trie of the known words as it's written out:
+ * <ul>
+ * <li>suffixes and directions end the name, except as its first word (AVENUE RD)
+ * <li>PARK, GATE and WAY are part of the name (HIGH PARK AVE, QUEENS PARK), unless a direction follows them
+ * <li>prefixes ST, SAINT, THE, MT and MOUNT start a name with the word after them, in their short form, and
+ * after THE that word may be a direction (THE WEST MALL)
+ * <li>aliases replace a whole word with the name they stand for (STCLAIR)
+ * <li>noise such as NR and OPP is skipped before the name
+ * </ul>
+ * Numbers are words starting with a digit, except ordinals (16TH). Words of less than 3 bytes can't start a name.
+ *
+ * An instance also caches the StreetDictionary ids of recent fields by the fields' raw bytes, as the same
+ * addresses repeat throughout a file. It's used by one thread at a time.
+ */
+final class StreetNormalizer {
+
+	// changed with the rules, so names normalized by others, such as those of a TicketsCache, are made again
+	static final int VERSION = 2;
+
+	private static final byte SEPARATOR = 0;
+	private static final byte DROPPED = 1;
+	// letters in upper case, digits, DROPPED for apostrophes, SEPARATOR for all else
+	private static final byte[] FOLD = new byte[256];
+
+	private static final byte SUFFIX = 1;
+	private static final byte DIRECTION = 2;
+	private static final byte PREFIX = 3;
+	private static final byte ALIAS = 4;
+	private static final byte NOISE = 5;
+	// suffixes that are often part of the name
+	private static final byte PART_SUFFIX = 6;
+	// a prefix that directions may follow
+	private static final byte ARTICLE = 7;
+
+	private static final String[] SUFFIXES = {
+		"ST", "STREET", "AVE", "AV", "AVENUE", "RD", "ROAD", "BLVD", "BOULEVARD", "DR", "DRIVE", "CRT", "CT", "COURT",
+		"CRES", "CRESCENT", "CIR", "CIRCLE", "PL", "PLACE", "LANE", "LN", "TER", "TERR", "TERRACE", "PKWY", "PARKWAY",
+		"GDNS", "GARDENS", "SQ", "SQUARE", "TRL", "TRAIL", "HWY", "HIGHWAY", "PK", "GRV", "GROVE",
+	};
+	private static final String[] PART_SUFFIXES = {"PARK", "GATE", "WAY"};
+	private static final String[] DIRECTIONS = {"E", "W", "N", "S", "EAST", "WEST", "NORTH", "SOUTH"};
+	private static final String[] NOISE_WORDS = {"NR", "OPP", "REAR", "IFO", "AT", "OF"};
+	// words with the form they're written in, prefixes then aliases
+	private static final String[][] PREFIXES = {{"ST", "ST"}, {"SAINT", "ST"}, {"MT", "MT"}, {"MOUNT", "MT"}};
+	private static final String[][] ALIASES = {{"STCLAIR", "ST CLAIR"}};
+
+	// 26 transitions by letter per state, to the next state + 1, so that no transition leaves -1. Root is state 0
+	private static final int MAX_STATES = 512;
+	private static final int[] TRIE = new int[26 * MAX_STATES];
+	private static final byte[] KINDS = new byte[MAX_STATES];
+	private static final byte[][] FORMS = new byte[MAX_STATES][];
+	private static int states = 0;
+
+	static {
+		for (int c = 'A'; c <= 'Z'; c++) {
+			FOLD[c] = (byte) c;
+			FOLD[c + 'a' - 'A'] = (byte) c;
+		}
+		for (int c = '0'; c <= '9'; c++) {
+			FOLD[c] = (byte) c;
+		}
+		FOLD['\''] = DROPPED;
+
+		// later kinds win, so ST is a prefix, which also ends a name
+		for (String word : SUFFIXES) add(word, SUFFIX, null);
+		for (String word : PART_SUFFIXES) add(word, PART_SUFFIX, null);
+		for (String word : DIRECTIONS) add(word, DIRECTION, null);
+		for (String word : NOISE_WORDS) add(word, NOISE, null);
+		for (String[] word : PREFIXES) add(word[0], PREFIX, word[1]);
+		add("THE", ARTICLE, "THE");
+		for (String[] word : ALIASES) add(word[0], ALIAS, word[1]);
+	}
+
+	private static void add(String word, byte kind, String form) {
+		int state = 0;
+		for (int i = 0; i < word.length(); i++) {
+			final int t = state * 26 + word.charAt(i) - 'A';
+			if (TRIE[t] == 0) {
+				if (++states == MAX_STATES) {
+					throw new IllegalStateException("More than "+ MAX_STATES +" trie states");
+				}
+				TRIE[t] = states + 1;
+			}
+			state = TRIE[t] - 1;
+		}
+		KINDS[state] = kind;
+		FORMS[state] = form != null ? form.getBytes(StandardCharsets.US_ASCII) : null;
+	}
+
+	// fields of up to CACHED_WORDS longs are cached
+	static final int CACHE_BITS = 12;
+	static final int CACHE_SLOTS = 1 << CACHE_BITS;
+	static final int CACHED_WORDS = 4;
+
+	private final StreetDictionary streets;
+	private final byte[] name = new byte[256];
+	private final long[] words = new long[CACHED_WORDS];
+	private final long[] cachedWords = new long[CACHE_SLOTS * CACHED_WORDS];
+	// field length + 1 per slot, 0 for an empty slot
+	private final int[] cachedLengths = new int[CACHE_SLOTS];
+	private final int[] cachedIds = new int[CACHE_SLOTS];
+
+	StreetNormalizer(StreetDictionary streets) {
+		this.streets = streets;
+	}
+
+	/**
+	 * Looks up the canonical street name of data[start, end) in the dictionary, from the cache when the same
+	 * bytes were normalized recently. The field is compared 8 bytes at a time, so data must be big endian.
+	 *
+	 * @return id of the name, -1 when there isn't one
+	 */
+	final int streetId(final ByteBuffer data, final int start, final int end) {
+		final int length = end - start;
+		final int count = (length + 7) >>> 3;
+		if (count > CACHED_WORDS) {
+			return lookup(data, start, end);
+		}
+
+		long hash = length;
+		for (int w = 0; w < count; w++) {
+			words[w] = ParkingTicketsEngine.wordAt(data, start + 8 * w, end);
+			hash = (hash ^ words[w]) * 0x9e3779b97f4a7c15L;
+		}
+		final int slot = (int) (hash >>> (64 - CACHE_BITS));
+
+		final int offset = slot * CACHED_WORDS;
+		if (cachedLengths[slot] == length + 1) {
+			int w = 0;
+			while (w < count && cachedWords[offset + w] == words[w]) { w++; }
+			if (w == count) {
+				return cachedIds[slot];
+			}
+		}
+
+		final int id = lookup(data, start, end);
+		System.arraycopy(words, 0, cachedWords, offset, count);
+		cachedLengths[slot] = length + 1;
+		cachedIds[slot] = id;
+		return id;
+	}
+
+	private int lookup(final ByteBuffer data, final int start, final int end) {
+		final int nameLength = normalize(data, start, end, name);
+		return nameLength > 0 ? streets.id(name, 0, nameLength, ByteKeyArena.hash(name, 0, nameLength)) : -1;
+	}
+
+	/**
+	 * @return length of the canonical street name of data[start, end) written to output, 0 when there isn't one
+	 */
+	static int normalize(final ByteBuffer data, final int start, final int end, final byte[] output) {
+		// output[0, length) is the name so far, each word is written after it and kept or dropped once it ends
+		int length = 0;
+		boolean prefixed = false;
+		boolean article = false;
+		// length of the name before a PART_SUFFIX that was its last word, -1 otherwise
+		int partEnd = -1;
+		int i = start;
+		for (;;) {
+			byte c = 0;
+			while (i < end && (c = FOLD[data.get(i) & 0xff]) <= DROPPED) { i++; }
+			if (i >= end) {
+				break;
+			}
+
+			final int word = length == 0 ? 0 : length + 1;
+			if (word > output.length - 1) {
+				break;
+			}
+			if (word > 0) {
+				output[length] = ' ';
+			}
+			final boolean numeric = c <= '9';
+			int pos = word;
+			int digits = 0;
+			int state = 0;
+			for (; i < end && (c = FOLD[data.get(i) & 0xff]) != SEPARATOR; i++) {
+				if (c == DROPPED || pos == output.length) {
+					continue;
+				}
+				output[pos++] = c;
+				if (c <= '9') {
+					digits++;
+					state = -1;
+				}
+				else if (state >= 0) {
+					state = TRIE[state * 26 + c - 'A'] - 1;
+				}
+			}
+			final int wordLength = pos - word;
+			final byte kind = state > 0 ? KINDS[state] : 0;
+			final boolean number = numeric && !(digits == wordLength - 2 && isOrdinal(output[pos - 2], output[pos - 1]));
+
+			if (length == 0) {
+				if (kind == PREFIX || kind == ARTICLE || kind == ALIAS) {
+					final byte[] form = FORMS[state];
+					length = Math.min(form.length, output.length);
+					System.arraycopy(form, 0, output, 0, length);
+					prefixed = kind != ALIAS;
+					article = kind == ARTICLE;
+				}
+				else if (!number && kind != NOISE && wordLength >= 3) {
+					length = pos;
+				}
+			}
+			else if (prefixed) {
+				if (number || kind == NOISE || kind == DIRECTION && !article) {
+					break;
+				}
+				length = pos;
+				prefixed = false;
+			}
+			else if (kind == DIRECTION && partEnd >= 0) {
+				length = partEnd;
+				break;
+			}
+			else if (kind == PART_SUFFIX) {
+				partEnd = length;
+				length = pos;
+				continue;
+			}
+			else if (number || kind != 0) {
+				break;
+			}
+			else {
+				length = pos;
+			}
+			partEnd = -1;
+		}
+		return !prefixed && length > 2 ? length : 0;
+	}
+
+	private static boolean isOrdinal(final byte c1, final byte c2) {
+		return c1 == 'S' && c2 == 'T' || c1 == 'N' && c2 == 'D' || c1 == 'R' && c2 == 'D' || c1 == 'T' && c2 == 'H';
+	}
+}
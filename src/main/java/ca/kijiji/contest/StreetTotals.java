@@ -0,0 +1,89 @@
+package ca.kijiji.contest;
+
+import java.util.Arrays;
+
+/**
+ * Fines totalled by StreetDictionary id, grown as ids are handed out, with the groups of the run's GroupBys.
+ * Used by one thread at a time.
+ */
+final class StreetTotals {
+
+	final GroupTotals groups = new GroupTotals();
+	// the fields of every row as well while a TicketsCache is written, null otherwise
+	TicketColumns rows;
+	// replaces the totals by id while approximate totals are kept, null otherwise
+	HeavyHitters sketch;
+
+	private long[] totals;
+	// ids below this may be non-zero
+	private int size;
+
+	StreetTotals(int capacity) {
+		totals = new long[Math.max(capacity, 16)];
+	}
+
+	final void add(final int id, final long fine) {
+		if (id >= size) {
+			grow(id + 1);
+		}
+		totals[id] += fine;
+	}
+
+	final int size() {
+		return size;
+	}
+
+	final void clear() {
+		Arrays.fill(totals, 0, size, 0);
+		size = 0;
+		groups.clear();
+		if (rows != null) {
+			rows.clear();
+		}
+	}
+
+	/**
+	 * Adds every total to dest's, id by id, and every group.
+	 */
+	final void addTo(final StreetTotals dest) {
+		dest.grow(size);
+		addTo(dest, 0, size);
+		groups.addTo(dest.groups);
+	}
+
+	/**
+	 * Adds the totals of ids [from, to) to dest's, which must have grown to at least to. Threads adding
+	 * disjoint ranges to the same dest don't interfere.
+	 */
+	final void addTo(final StreetTotals dest, final int from, final int to) {
+		final long[] source = totals;
+		final long[] target = dest.totals;
+		for (int id = from, end = Math.min(to, size); id < end; id++) {
+			target[id] += source[id];
+		}
+	}
+
+	/**
+	 * Makes ids below size addable without growing.
+	 */
+	final void grow(final int size) {
+		if (size > this.size) {
+			if (size > totals.length) {
+				totals = Arrays.copyOf(totals, Math.max(totals.length * 2, size));
+			}
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Adds the non-zero totals to dest by name, once per street.
+	 */
+	final void putTo(final StreetDictionary streets, final OpenBytesLongHashMap dest) {
+		for (int id = 0; id < size; id++) {
+			if (totals[id] != 0) {
+				final byte[] name = streets.name(id);
+				dest.adjustOrPutValue(name, 0, name.length, streets.hash(id), totals[id]);
+			}
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package ca.kijiji.contest;
+
+import java.util.Arrays;
+
+/**
+ * The fields of parsed rows, one array per field, for writing a TicketsCache. Numbers are -1 where the
+ * field isn't one. Used by one thread at a time.
+ */
+final class TicketColumns {
+
+	int size;
+	// StreetDictionary ids, -1 for rows without a street or fine
+	int[] streets = new int[1024];
+	int[] fines = new int[1024];
+	int[] codes = new int[1024];
+	int[] dates = new int[1024];
+	int[] times = new int[1024];
+
+	final void add(final int street, final int fine, final int code, final int date, final int time) {
+		if (size == streets.length) {
+			final int length = size * 2;
+			streets = Arrays.copyOf(streets, length);
+			fines = Arrays.copyOf(fines, length);
+			codes = Arrays.copyOf(codes, length);
+			dates = Arrays.copyOf(dates, length);
+			times = Arrays.copyOf(times, length);
+		}
+		streets[size] = street;
+		fines[size] = fine;
+		codes[size] = code;
+		dates[size] = date;
+		times[size] = time;
+		size++;
+	}
+
+	final void clear() {
+		size = 0;
+	}
+}
@@ -0,0 +1,247 @@
+package ca.kijiji.contest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * The parsed fields of a tickets file, kept in a file next to it so later runs read the fields instead of
+ * the text. The file is mapped as a whole:
+ * <pre>
+ *   header      64 bytes, see below
+ *   names       street names as a 2 byte length and the bytes, padded to 4 bytes
+ *   columns     int per row of street numbers, fines, infraction codes, dates and times, one column after the other
+ * </pre>
+ * The header has the tickets file's size, modification time and a CRC32 of its first and last SAMPLE_SIZE
+ * bytes, so a cache whose file changed is stale, the StreetNormalizer VERSION the names were made with, so
+ * a cache of other rules is stale too, and a CRC32 of the rest of the header. Only rows with a numeric
+ * fine are kept. Names holds only the streets of the file's rows, which street numbers index, -1 for rows
+ * without a street.
+ */
+final class TicketsCache {
+
+	static final String SUFFIX = ".cols";
+	// "TKTCOLS1"
+	static final long MAGIC = 0x544b54434f4c5331L;
+	static final int HEADER_SIZE = 64;
+	static final int SAMPLE_SIZE = 64 * 1024;
+
+	static final int STREET = 0;
+	static final int FINE = 1;
+	static final int CODE = 2;
+	static final int DATE = 3;
+	static final int TIME = 4;
+	static final int COLUMNS = 5;
+
+	final int rows;
+	final byte[][] names;
+	private final ByteBuffer data;
+	private final int columnsStart;
+
+	private TicketsCache(int rows, byte[][] names, ByteBuffer data, int columnsStart) {
+		this.rows = rows;
+		this.names = names;
+		this.data = data;
+		this.columnsStart = columnsStart;
+	}
+
+	static Path pathOf(Path parkingTicketsFile) {
+		return parkingTicketsFile.resolveSibling(parkingTicketsFile.getFileName() + SUFFIX);
+	}
+
+	/**
+	 * @return the cache of the tickets file, null if there's none or it's stale
+	 */
+	static TicketsCache open(Path parkingTicketsFile) throws IOException {
+		final Path path = pathOf(parkingTicketsFile);
+		if (!Files.isRegularFile(path) || Files.size(path) > Integer.MAX_VALUE) {
+			return null;
+		}
+		final ByteBuffer data;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			data = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (data.capacity() < HEADER_SIZE || data.getLong(0) != MAGIC || data.getInt(HEADER_SIZE - 4) != headerCrc(data)
+				|| data.getInt(40) != StreetNormalizer.VERSION) {
+			return null;
+		}
+		final ByteBuffer header = header(parkingTicketsFile);
+		for (int i = 8; i < 28; i++) {
+			if (data.get(i) != header.get(i)) {
+				return null;
+			}
+		}
+
+		final int rows = data.getInt(28);
+		final byte[][] names = new byte[data.getInt(32)][];
+		final int columnsStart = HEADER_SIZE + data.getInt(36);
+		if (rows < 0 || columnsStart + (long) rows * COLUMNS * 4 != data.capacity()) {
+			return null;
+		}
+		for (int n = 0, i = HEADER_SIZE; n < names.length; n++) {
+			names[n] = new byte[data.getShort(i) & 0xffff];
+			for (int k = 0; k < names[n].length; k++) {
+				names[n][k] = data.get(i + 2 + k);
+			}
+			i += 2 + names[n].length;
+		}
+		return new TicketsCache(rows, names, data, columnsStart);
+	}
+
+	/**
+	 * Writes the cache of the tickets file from the columns of its rows, replacing any other. The rows' ids
+	 * in streets, which may hold the streets of other files too, are numbered again by first row.
+	 *
+	 * @return false if the cache would pass 2 GB, and isn't written
+	 */
+	static boolean write(Path parkingTicketsFile, StreetDictionary streets, TicketColumns[] parts) throws IOException {
+		long rows = 0;
+		for (TicketColumns part : parts) {
+			rows += part.size;
+		}
+		// the street number of each id of the rows, -1 for the ids of other files
+		final int[] numbers = new int[streets.size()];
+		Arrays.fill(numbers, -1);
+		final int[] ids = new int[streets.size()];
+		int count = 0;
+		int namesLength = 0;
+		for (TicketColumns part : parts) {
+			for (int r = 0; r < part.size; r++) {
+				final int id = part.streets[r];
+				if (id >= 0 && numbers[id] < 0) {
+					numbers[id] = count;
+					ids[count++] = id;
+					namesLength += 2 + streets.name(id).length;
+				}
+			}
+		}
+		namesLength = (namesLength + 3) & ~3;
+		if (HEADER_SIZE + namesLength + rows * COLUMNS * 4 > Integer.MAX_VALUE) {
+			return false;
+		}
+
+		final ByteBuffer header = header(parkingTicketsFile);
+		header.putLong(0, MAGIC);
+		header.putInt(28, (int) rows);
+		header.putInt(32, count);
+		header.putInt(36, namesLength);
+		header.putInt(40, StreetNormalizer.VERSION);
+		header.putInt(HEADER_SIZE - 4, headerCrc(header));
+
+		final ByteBuffer names = ByteBuffer.allocate(namesLength);
+		for (int n = 0; n < count; n++) {
+			final byte[] name = streets.name(ids[n]);
+			names.putShort((short) name.length).put(name);
+		}
+		names.clear();
+
+		// written aside and moved into place, so a cache is never read half written
+		final Path path = pathOf(parkingTicketsFile);
+		final Path written = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(written, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			writeFully(channel, header);
+			writeFully(channel, names);
+			final ByteBuffer column = ByteBuffer.allocate(64 * 1024);
+			for (int c = 0; c < COLUMNS; c++) {
+				for (TicketColumns part : parts) {
+					final int[] values = c == STREET ? part.streets : c == FINE ? part.fines : c == CODE ? part.codes : c == DATE ? part.dates : part.times;
+					for (int r = 0; r < part.size; r++) {
+						if (!column.hasRemaining()) {
+							column.flip();
+							writeFully(channel, column);
+							column.clear();
+						}
+						column.putInt(c == STREET && values[r] >= 0 ? numbers[values[r]] : values[r]);
+					}
+				}
+			}
+			column.flip();
+			writeFully(channel, column);
+		}
+		Files.move(written, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return true;
+	}
+
+	final int get(final int column, final int row) {
+		return data.getInt(columnsStart + ((column * rows + row) << 2));
+	}
+
+	/**
+	 * @return the cache column of groupBy's field
+	 */
+	static int column(final GroupBy groupBy) {
+		switch (groupBy) {
+		case INFRACTION_CODE: return CODE;
+		case HOUR: return TIME;
+		default: return DATE;
+		}
+	}
+
+	/**
+	 * Adds the rows of [from, to) to totals, with ids mapping the cache's street numbers to totals' ids.
+	 */
+	final void addRows(final int from, final int to, final int[] ids, final StreetTotals totals) {
+		final GroupTotals groups = totals.groups;
+		final GroupBy[] groupBys = groups.groupBys;
+		final int[] groupColumns = new int[groupBys.length];
+		for (int g = 0; g < groupBys.length; g++) {
+			groupColumns[g] = column(groupBys[g]);
+		}
+
+		for (int row = from; row < to; row++) {
+			final int street = get(STREET, row);
+			final int fine = get(FINE, row);
+			if (street >= 0 && fine > 0) {
+				totals.add(ids[street], fine);
+			}
+			for (int g = 0; g < groupColumns.length; g++) {
+				final int key = groupBys[g].key(get(groupColumns[g], row));
+				if (key >= 0) {
+					groups.add(g, key, fine);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return a header with the tickets file's size, modification time and sample CRC at 8, 16 and 24
+	 */
+	private static ByteBuffer header(Path parkingTicketsFile) throws IOException {
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		final CRC32 crc = new CRC32();
+		try (FileChannel channel = FileChannel.open(parkingTicketsFile, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			final ByteBuffer sample = ByteBuffer.allocate((int) Math.min(size, SAMPLE_SIZE));
+			for (long position : new long[] {0, Math.max(0, size - SAMPLE_SIZE)}) {
+				sample.clear();
+				while (sample.hasRemaining() && channel.read(sample, position + sample.position()) >= 0) {}
+				crc.update(sample.array(), 0, sample.position());
+			}
+			header.putLong(8, size);
+		}
+		header.putLong(16, Files.getLastModifiedTime(parkingTicketsFile).toMillis());
+		header.putInt(24, (int) crc.getValue());
+		return header;
+	}
+
+	private static int headerCrc(ByteBuffer header) {
+		final CRC32 crc = new CRC32();
+		for (int i = 0; i < HEADER_SIZE - 4; i++) {
+			crc.update(header.get(i));
+		}
+		return (int) crc.getValue();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
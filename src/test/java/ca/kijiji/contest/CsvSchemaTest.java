@@ -0,0 +1,74 @@
+package ca.kijiji.contest;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class CsvSchemaTest {
+
+    private static final String HEADER = "tag_number_masked,date_of_infraction,infraction_code,infraction_description,"
+            + "set_fine_amount,time_of_infraction,location1,location2,location3,location4\n";
+
+    @Test
+    public void testFixedWidthColumnsAreSkipped() {
+        CsvSchema schema = read(HEADER
+                + "***03774,20120101,29,PARK PROHIBITED TIME NO PERMIT,30,0002,NR,1 KING ST W,,\n"
+                + "***04219,20120102,5,PARK-SIGNED HWY-EXC 3 HR MAX,30,0003,NR,20 QUEEN ST E,,\n");
+
+        assertThat(schema, equalTo(CsvSchema.DEFAULT));
+        assertThat(schema.skip, equalTo(18));
+    }
+
+    @Test
+    public void testColumnsFoundByName() {
+        CsvSchema schema = read("\"Date_Of_Infraction\",LOCATION2,tag_number_masked,Set_Fine_Amount\r\n"
+                + "20120101,1 KING ST W,***03774,30\r\n"
+                + "20120102,20 QUEEN ST E,***4219,30\r\n");
+
+        assertThat(schema.fineColumn, equalTo(3));
+        assertThat(schema.locationColumn, equalTo(1));
+        assertThat(schema.dateColumn, equalTo(0));
+        assertThat(schema.codeColumn, equalTo(-1));
+        assertThat(schema.timeColumn, equalTo(-1));
+        // only the date is before location2
+        assertThat(schema.separators, equalTo(new int[] {8}));
+    }
+
+    @Test
+    public void testVariableWidthsAreScanned() {
+        CsvSchema schema = read(HEADER
+                + "***03774,20120101,29,PARK PROHIBITED TIME NO PERMIT,30,0002,NR,1 KING ST W,,\n"
+                + "***4219,20120102,5,PARK-SIGNED HWY-EXC 3 HR MAX,30,0003,NR,20 QUEEN ST E,,\n");
+
+        assertThat(schema.skip, equalTo(0));
+    }
+
+    @Test
+    public void testOnlyRowsOfTheSampledWidthsSkip() {
+        assertThat(skips("***03774,20120101,29,PARK,30,0002,NR,1 KING ST W,,\n"), equalTo(true));
+        // commas at the sampled offsets, but in the next row
+        assertThat(skips("X,\n12345,12345678,29,PARK,30,0002,NR,1 KING ST W,,\n"), equalTo(false));
+        // and after a narrower column
+        assertThat(skips("1234,678,12345678,29,PARK,30,0002,NR,1 KING ST W,,\n"), equalTo(false));
+        assertThat(skips("***0377,20120101,29\n"), equalTo(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingColumnRejected() {
+        read("tag_number_masked,date_of_infraction,fine,location2\n***03774,20120101,30,1 KING ST W\n");
+    }
+
+    private static boolean skips(String row) {
+        byte[] bytes = row.getBytes(StandardCharsets.US_ASCII);
+        return CsvSchema.DEFAULT.skips(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    private static CsvSchema read(String csv) {
+        byte[] bytes = csv.getBytes(StandardCharsets.US_ASCII);
+        return CsvSchema.read(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+}
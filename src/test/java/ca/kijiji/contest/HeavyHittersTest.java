@@ -0,0 +1,94 @@
+package ca.kijiji.contest;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class HeavyHittersTest {
+
+    @Test
+    public void testExactWhileNamesFit() {
+        HeavyHitters sketch = new HeavyHitters(1024, 4, 16);
+        add(sketch, "KING", 30);
+        add(sketch, "QUEEN", 60);
+        add(sketch, "KING", 45);
+
+        List<StreetEstimate> top = sketch.top(5);
+        assertThat(top.size(), equalTo(2));
+        assertThat(top.get(0), equalTo(new StreetEstimate("KING", 75, 0)));
+        assertThat(top.get(1), equalTo(new StreetEstimate("QUEEN", 60, 0)));
+        assertThat(sketch.total(), equalTo(135L));
+    }
+
+    @Test
+    public void testBoundsOnSkewedNames() {
+        HeavyHitters sketch = new HeavyHitters(1024, 4, 64);
+        Map<String, Long> exact = new HashMap<>();
+        addSkewed(sketch, exact, new Random(2012), 200000);
+        long footprint = sketch.footprint();
+
+        assertTopWithinBounds(sketch, exact, 10);
+        assertThat(sketch.footprint(), equalTo(footprint));
+    }
+
+    @Test
+    public void testMergedBounds() {
+        HeavyHitters sketch1 = new HeavyHitters(1024, 4, 64);
+        HeavyHitters sketch2 = new HeavyHitters(1024, 4, 64);
+        Map<String, Long> exact = new HashMap<>();
+        addSkewed(sketch1, exact, new Random(1), 100000);
+        addSkewed(sketch2, exact, new Random(2), 100000);
+        sketch2.addTo(sketch1);
+
+        long total = 0;
+        for (long street : exact.values()) {
+            total += street;
+        }
+        assertThat(sketch1.total(), equalTo(total));
+        assertTopWithinBounds(sketch1, exact, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeRejectsOtherDimensions() {
+        new HeavyHitters(1024, 4, 64).addTo(new HeavyHitters(2048, 4, 64));
+    }
+
+    private static void assertTopWithinBounds(HeavyHitters sketch, Map<String, Long> exact, int k) {
+        List<StreetEstimate> top = sketch.top(k);
+        assertThat(top.size(), equalTo(k));
+        for (int i = 0; i < k; i++) {
+            StreetEstimate estimate = top.get(i);
+            long total = exact.get(estimate.street());
+            assertThat(estimate.street(), estimate.total(), greaterThanOrEqualTo(total));
+            assertThat(estimate.street(), estimate.total() - estimate.error(), lessThanOrEqualTo(total));
+        }
+        // the heaviest names stand well clear of the rest
+        for (int i = 0; i < 3; i++) {
+            assertThat(top.get(i).street(), equalTo("STREET" + i));
+        }
+    }
+
+    /**
+     * Fines of 10 to a few heavy names among many light ones.
+     */
+    private static void addSkewed(HeavyHitters sketch, Map<String, Long> exact, Random random, int rows) {
+        for (int i = 0; i < rows; i++) {
+            String name = "STREET" + (int) (50000 * Math.pow(random.nextDouble(), 6));
+            add(sketch, name, 10);
+            Long total = exact.get(name);
+            exact.put(name, (total == null ? 0 : total) + 10);
+        }
+    }
+
+    private static void add(HeavyHitters sketch, String name, long fine) {
+        byte[] bytes = name.getBytes(StandardCharsets.US_ASCII);
+        sketch.add(bytes, bytes.length, fine);
+    }
+}
@@ -0,0 +1,50 @@
+package ca.kijiji.contest;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertThat(histogram.count(), equalTo(100000L));
+        assertThat(histogram.max(), equalTo(100000000L));
+        assertThat((double) histogram.percentile(50), closeTo(50000000, 50000000.0 / LatencyHistogram.SUB_BUCKETS));
+        assertThat((double) histogram.percentile(99), closeTo(99000000, 99000000.0 / LatencyHistogram.SUB_BUCKETS));
+        assertThat(histogram.percentile(100), equalTo(100000000L));
+        assertThat(histogram.mean(), closeTo(50000500.0, 1));
+    }
+
+    @Test
+    public void testBucketsCoverLongRange() {
+        for (long value : new long[] {0, 1, 31, 32, 33, 1000, Integer.MAX_VALUE, Long.MAX_VALUE / 3, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertThat(String.valueOf(value), LatencyHistogram.highest(bucket), greaterThanOrEqualTo(value));
+            assertThat(String.valueOf(value), bucket == 0 || LatencyHistogram.highest(bucket - 1) < value, equalTo(true));
+        }
+    }
+
+    @Test
+    public void testAddAndReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        LatencyHistogram other = new LatencyHistogram();
+        histogram.record(5);
+        other.record(500);
+        histogram.add(other);
+
+        assertThat(histogram.count(), equalTo(2L));
+        assertThat(histogram.percentile(50), equalTo(5L));
+        assertThat(histogram.max(), equalTo(500L));
+
+        histogram.reset();
+        assertThat(histogram.count(), equalTo(0L));
+        assertThat(histogram.percentile(50), equalTo(0L));
+    }
+}
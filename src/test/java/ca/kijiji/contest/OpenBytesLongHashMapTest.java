@@ -0,0 +1,109 @@
+package ca.kijiji.contest;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class OpenBytesLongHashMapTest {
+
+    // distinct keys with the same 32-bit FNV-1 hash
+    private static final String COLLIDING_1 = "CVXPM";
+    private static final String COLLIDING_2 = "PVWSGQOE";
+
+    @Test
+    public void testVerifiedKeysDoNotMergeOnHashCollision() {
+        OpenBytesLongHashMap map = new OpenBytesLongHashMap(64, true);
+        put(map, COLLIDING_1, 10);
+        put(map, COLLIDING_2, 20);
+        put(map, COLLIDING_1, 5);
+
+        assertThat(map.get(COLLIDING_1), equalTo(15L));
+        assertThat(map.get(COLLIDING_2), equalTo(20L));
+    }
+
+    @Test
+    public void testHashOnlyKeysMergeOnHashCollision() {
+        OpenBytesLongHashMap map = new OpenBytesLongHashMap(64, false);
+        put(map, COLLIDING_1, 10);
+        put(map, COLLIDING_2, 20);
+
+        assertThat(map.get(COLLIDING_1), equalTo(30L));
+    }
+
+    @Test
+    public void testVerifiedMergeKeepsCollidingKeysApart() {
+        OpenBytesLongHashMap from = new OpenBytesLongHashMap(64, true);
+        put(from, COLLIDING_1, 1);
+        put(from, COLLIDING_2, 2);
+        OpenBytesLongHashMap to = new OpenBytesLongHashMap(64, true);
+        put(to, COLLIDING_2, 40);
+
+        from.mergeTo(to);
+
+        assertThat(to.get(COLLIDING_1), equalTo(1L));
+        assertThat(to.get(COLLIDING_2), equalTo(42L));
+    }
+
+    @Test
+    public void testTotalsPastIntRange() {
+        OpenBytesLongHashMap map = new OpenBytesLongHashMap(16, true);
+        for (int i = 0; i < 3; i++) {
+            put(map, "KING", Integer.MAX_VALUE);
+        }
+        put(map, "QUEEN", 1);
+
+        assertThat(map.get("KING"), equalTo(3L * Integer.MAX_VALUE));
+
+        Map<String, Long> dest = new HashMap<>();
+        map.putAllTo(dest);
+        assertThat(dest.get("KING"), equalTo(3L * Integer.MAX_VALUE));
+        assertThat(dest.get("QUEEN"), equalTo(1L));
+    }
+
+    @Test
+    public void testSortSlotsByTotalThenKey() {
+        OpenBytesLongHashMap map = new OpenBytesLongHashMap(64, true);
+        for (int i = 0; i < 40; i++) {
+            put(map, "STREET" + i, i % 4);
+        }
+        int[] slots = new int[map.size()];
+        map.slots(slots);
+        map.sortSlots(slots, 0, slots.length, new int[slots.length], false);
+
+        assertThat(map.keyAt(slots[0]), equalTo("STREET11"));
+        assertThat(map.keyAt(slots[1]), equalTo("STREET15"));
+        assertThat(map.keyAt(slots[39]), equalTo("STREET8"));
+        for (int i = 1; i < slots.length; i++) {
+            assertThat(map.valueAt(slots[i]), lessThanOrEqualTo(map.valueAt(slots[i - 1])));
+        }
+
+        map.sortSlots(slots, 0, slots.length, new int[slots.length], true);
+        assertThat(map.keyAt(slots[0]), equalTo("STREET0"));
+        assertThat(map.keyAt(slots[1]), equalTo("STREET1"));
+        assertThat(map.keyAt(slots[2]), equalTo("STREET10"));
+    }
+
+    @Test
+    public void testMergeAfterGrowing() {
+        OpenBytesLongHashMap from = new OpenBytesLongHashMap(8, true);
+        OpenBytesLongHashMap to = new OpenBytesLongHashMap(8, true);
+        for (int i = 0; i < 1000; i++) {
+            put(from, "STREET" + i, i);
+            put(to, "STREET" + i, 1L << 32);
+        }
+        from.mergeTo(to);
+
+        assertThat(to.size(), equalTo(1000));
+        assertThat(to.get("STREET999"), equalTo((1L << 32) + 999));
+    }
+
+    private static void put(OpenBytesLongHashMap map, String key, long value) {
+        byte[] bytes = key.getBytes(StandardCharsets.US_ASCII);
+        map.adjustOrPutValue(bytes, 0, bytes.length, value);
+    }
+}
@@ -0,0 +1,100 @@
+package ca.kijiji.contest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.SortedMap;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class ParkingTicketsAggregatorTest {
+
+    private static final String HEADER = "tag_number_masked,date_of_infraction,infraction_code,infraction_description,"
+            + "set_fine_amount,time_of_infraction,location1,location2,location3,location4\n";
+
+    private ParkingTicketsAggregator aggregator;
+
+    @Before
+    public void setup() {
+        aggregator = new ParkingTicketsAggregator(new ParkingTicketsEngine(3, 16, 1024 * 1024));
+    }
+
+    @After
+    public void teardown() {
+        aggregator.close();
+    }
+
+    @Test
+    public void testRowsSplitAcrossChunks() {
+        byte[] csv = csv(20000);
+        SortedMap<String, Long> expected = oneShot(csv);
+
+        // small chunks split rows, large ones are parsed in worker slices
+        Random random = new Random(2012);
+        for (int offset = 0; offset < csv.length; ) {
+            int length = Math.min(csv.length - offset, random.nextBoolean() ? random.nextInt(100) : random.nextInt(400 * 1024));
+            aggregator.append(csv, offset, length);
+            offset += length;
+        }
+
+        assertThat(aggregator.snapshot(), equalTo(expected));
+        assertThat(expected.get("KING"), greaterThan(0L));
+    }
+
+    @Test
+    public void testSnapshotIsUnaffectedByLaterAppends() {
+        aggregator.append(bytes(HEADER + row("30", "1 KING ST W")));
+        SortedMap<String, Long> first = aggregator.snapshot();
+
+        aggregator.append(bytes(row("20", "1 KING ST W") + row("60", "20 QUEEN ST E")));
+        SortedMap<String, Long> second = aggregator.snapshot();
+
+        assertThat(first.size(), equalTo(1));
+        assertThat(first.get("KING"), equalTo(30L));
+        assertThat(second.firstKey(), equalTo("QUEEN"));
+        assertThat(second.get("KING"), equalTo(50L));
+        assertThat(aggregator.topStreets(1).get(0).getKey(), equalTo("QUEEN"));
+    }
+
+    @Test
+    public void testPartialRowWaitsForNewlineOrFlush() throws Exception {
+        String row = row("30", "1 KING ST W");
+        String last = row("40", "5 BAY ST");
+        aggregator.append(new ByteArrayInputStream(bytes(row + last.substring(0, last.length() - 1))));
+
+        assertThat(aggregator.snapshot().get("BAY"), nullValue());
+        aggregator.flush();
+        assertThat(aggregator.snapshot().get("BAY"), equalTo(40L));
+
+        aggregator.reset();
+        assertThat(aggregator.snapshot().size(), equalTo(0));
+    }
+
+    private static SortedMap<String, Long> oneShot(byte[] csv) {
+        try (ParkingTicketsEngine engine = new ParkingTicketsEngine(2, 16, 1024 * 1024)) {
+            return engine.sortStreetsByProfitabilityLong(new ByteArrayInputStream(csv));
+        }
+    }
+
+    private static byte[] csv(int rows) {
+        String[] streets = {"1 KING ST W", "20 QUEEN ST E", "5 BAY ST", "9 ST CLAIR AVE W", "2 FRONT ST", "7 THE QUEENSWAY"};
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 0; i < rows; i++) {
+            csv.append(row(String.valueOf(5 * (1 + i % 11)), streets[i % streets.length]));
+        }
+        return bytes(csv.toString());
+    }
+
+    private static String row(String fine, String location2) {
+        return "***10000,20120101,5,PARK FAIL TO DEPOSIT FEE IN METER," + fine + ",1200,NR," + location2 + ",,\n";
+    }
+
+    private static byte[] bytes(String csv) {
+        return csv.getBytes(StandardCharsets.US_ASCII);
+    }
+}
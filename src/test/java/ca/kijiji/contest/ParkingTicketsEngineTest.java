@@ -0,0 +1,691 @@
+package ca.kijiji.contest;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the engine over small generated files, so it doesn't need the 2012 data set.
+ */
+public class ParkingTicketsEngineTest {
+
+    private static final String HEADER = "tag_number_masked,date_of_infraction,infraction_code,infraction_description,"
+            + "set_fine_amount,time_of_infraction,location1,location2,location3,location4\n";
+
+    private static ParkingTicketsEngine engine;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setup() {
+        engine = new ParkingTicketsEngine(3, 16, 1024 * 1024);
+    }
+
+    @AfterClass
+    public static void teardown() {
+        engine.close();
+    }
+
+    @Test
+    public void testLongTotalsPastIntRange() throws Exception {
+        File file = write(3, "999999999", "1 KING ST W");
+
+        SortedMap<String, Long> streets = engine.sortStreetsByProfitabilityLong(file.toPath());
+
+        assertThat(streets.get("KING"), equalTo(3 * 999999999L));
+        assertThat(streets.firstKey(), equalTo("KING"));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void testIntTotalsRejectOverflow() throws Exception {
+        File file = write(3, "999999999", "1 KING ST W");
+
+        engine.sortStreetsByProfitability(file.toPath());
+    }
+
+    @Test
+    public void testTopStreetsOrdersByTotalThenName() throws Exception {
+        File file = write(rows(2, "30", "1 KING ST W"), rows(1, "60", "20 QUEEN ST E"), rows(3, "20", "5 BAY ST"),
+                rows(1, "15", "9 ST CLAIR AVE W"), rows(1, "5", "2 FRONT ST"));
+
+        List<Map.Entry<String, Long>> top = engine.topStreets(file.toPath(), 3);
+
+        assertThat(top.size(), equalTo(3));
+        assertThat(top.get(0), equalTo(entry("BAY", 60L)));
+        assertThat(top.get(1), equalTo(entry("KING", 60L)));
+        assertThat(top.get(2), equalTo(entry("QUEEN", 60L)));
+        assertThat(engine.topStreets(file.toPath(), 10).size(), equalTo(5));
+        assertThat(engine.topStreets(file.toPath(), 0).size(), equalTo(0));
+    }
+
+    @Test
+    public void testTopStreetsApproximateBoundsExact() throws Exception {
+        File file = write(rows(2, "30", "1 KING ST W"), rows(1, "60", "20 QUEEN ST E"), rows(3, "20", "5 BAY ST"),
+                rows(1, "15", "9 ST CLAIR AVE W"), rows(1, "5", "2 FRONT ST"));
+        int streets = engine.streets.size();
+
+        List<StreetEstimate> top = engine.topStreetsApproximate(file.toPath(), 3);
+
+        assertThat(top.size(), equalTo(3));
+        assertThat(top.get(0), equalTo(new StreetEstimate("BAY", 60, 0)));
+        assertThat(top.get(1), equalTo(new StreetEstimate("KING", 60, 0)));
+        assertThat(top.get(2), equalTo(new StreetEstimate("QUEEN", 60, 0)));
+        try (InputStream stream = new FileInputStream(file)) {
+            assertThat(engine.topStreetsApproximate(stream, 10).size(), equalTo(5));
+        }
+        // no street is interned by approximate runs, and exact runs are unaffected
+        assertThat(engine.streets.size(), equalTo(streets));
+        assertThat(engine.topStreets(file.toPath(), 1).get(0), equalTo(entry("BAY", 60L)));
+    }
+
+    @Test
+    public void testPipelinesMatchQueue() throws Exception {
+        String[] streets = {"1 KING ST W", "20 QUEEN ST E", "5 BAY ST", "9 ST CLAIR AVE W", "2 FRONT ST", "7 THE QUEENSWAY"};
+        String[] rows = new String[6000];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = rows(1 + i % 7, String.valueOf(5 * (1 + i % 11)), streets[i % streets.length]);
+        }
+        // more than a buffer of a few reads, so the reader wraps it, and more than a mapped block
+        File file = write(rows);
+
+        SortedMap<String, Long> expected = engine.sortStreetsByProfitabilityLong(file.toPath());
+        assertThat(expected.size(), equalTo(streets.length));
+        for (ParkingTicketsEngine.Pipeline pipeline : ParkingTicketsEngine.Pipeline.values()) {
+            try (ParkingTicketsEngine pipelineEngine = new ParkingTicketsEngine(3, 16, 512 * 1024, pipeline)) {
+                // twice, to reuse the engine's maps and ring
+                for (int run = 0; run < 2; run++) {
+                    try (InputStream stream = new FileInputStream(file)) {
+                        assertThat(pipeline.name(), pipelineEngine.sortStreetsByProfitabilityLong(stream), equalTo(expected));
+                    }
+                    assertThat(pipeline.name(), pipelineEngine.sortStreetsByProfitabilityLong(file.toPath()), equalTo(expected));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStreamWithoutAvailableOrTrailingNewline() throws Exception {
+        byte[] csv = (HEADER + rows(3000, "30", "1 KING ST W") + rows(1, "40", "5 BAY ST").replace(",,\n", ""))
+                .getBytes(StandardCharsets.US_ASCII);
+        // reads of a few bytes at a time and available() of 0, like a socket
+        InputStream trickle = new FilterInputStream(new ByteArrayInputStream(csv)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 7));
+            }
+
+            @Override
+            public int available() {
+                return 0;
+            }
+        };
+
+        SortedMap<String, Long> streets = engine.sortStreetsByProfitabilityLong(trickle);
+
+        assertThat(streets.get("KING"), equalTo(3000 * 30L));
+        assertThat(streets.get("BAY"), equalTo(40L));
+    }
+
+    @Test
+    public void testCompressedFiles() throws Exception {
+        String first = HEADER + rows(2000, "30", "1 KING ST W");
+        String second = HEADER + rows(1000, "60", "20 QUEEN ST E");
+
+        File gz = folder.newFile("tickets.csv.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gz))) {
+            out.write((first + rows(1, "15", "2 FRONT ST")).getBytes(StandardCharsets.US_ASCII));
+        }
+        SortedMap<String, Long> streets = engine.sortStreetsByProfitabilityLong(gz.toPath());
+        assertThat(streets.get("KING"), equalTo(2000 * 30L));
+        assertThat(streets.get("FRONT"), equalTo(15L));
+
+        // each entry has its own header
+        File zip = folder.newFile("tickets.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("2012-01.csv"));
+            out.write(first.getBytes(StandardCharsets.US_ASCII));
+            out.putNextEntry(new ZipEntry("2012-02.csv"));
+            out.write(second.getBytes(StandardCharsets.US_ASCII));
+        }
+        streets = engine.sortStreetsByProfitabilityLong(zip.toPath());
+        assertThat(streets.size(), equalTo(2));
+        assertThat(streets.get("KING"), equalTo(2000 * 30L));
+        assertThat(streets.get("QUEEN"), equalTo(1000 * 60L));
+    }
+
+    @Test
+    public void testTruncatedGzipFailsTheRun() throws Exception {
+        File gz = folder.newFile("truncated.csv.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gz))) {
+            out.write((HEADER + rows(50000, "30", "1 KING ST W")).getBytes(StandardCharsets.US_ASCII));
+        }
+        byte[] compressed = Files.readAllBytes(gz.toPath());
+        Files.write(gz.toPath(), Arrays.copyOf(compressed, compressed.length / 2));
+        File good = write(3, "30", "1 KING ST W");
+
+        for (ParkingTicketsEngine.Pipeline pipeline : new ParkingTicketsEngine.Pipeline[] {ParkingTicketsEngine.Pipeline.QUEUE, ParkingTicketsEngine.Pipeline.DISRUPTOR_BLOCKING}) {
+            try (ParkingTicketsEngine pipelineEngine = new ParkingTicketsEngine(3, 16, 256 * 1024, pipeline)) {
+                try {
+                    pipelineEngine.sortStreetsByProfitabilityLong(gz.toPath());
+                    fail(pipeline.name() + " returned partial totals");
+                }
+                catch (IOException e) {
+                    assertThat(pipeline.name(), e, instanceOf(EOFException.class));
+                }
+                try (InputStream stream = new GZIPInputStream(new FileInputStream(gz))) {
+                    pipelineEngine.topStreets(stream, 1);
+                    fail(pipeline.name() + " returned partial totals");
+                }
+                catch (IllegalStateException e) {
+                    assertThat(pipeline.name(), e.getCause(), instanceOf(EOFException.class));
+                }
+
+                // the workers were released, so the engine still runs
+                assertThat(pipelineEngine.sortStreetsByProfitabilityLong(good.toPath()).get("KING"), equalTo(90L));
+            }
+        }
+    }
+
+    @Test
+    public void testLayoutsOfEachZipEntry() throws Exception {
+        // another year's export, with the location first and variable width tags
+        String other = "location2,set_fine_amount,tag_number_masked\n";
+        for (int i = 0; i < 1500; i++) {
+            other += "20 QUEEN ST E,60,***" + i + "\n";
+        }
+
+        File zip = folder.newFile("years.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("2012.csv"));
+            out.write((HEADER + rows(2000, "30", "1 KING ST W")).getBytes(StandardCharsets.US_ASCII));
+            out.putNextEntry(new ZipEntry("2013.csv"));
+            out.write(other.getBytes(StandardCharsets.US_ASCII));
+            out.putNextEntry(new ZipEntry("2014.csv"));
+            out.write((HEADER + rows(1000, "15", "5 BAY ST")).getBytes(StandardCharsets.US_ASCII));
+        }
+        SortedMap<String, Long> streets = engine.sortStreetsByProfitabilityLong(zip.toPath());
+
+        assertThat(streets.size(), equalTo(3));
+        assertThat(streets.get("KING"), equalTo(2000 * 30L));
+        assertThat(streets.get("QUEEN"), equalTo(1500 * 60L));
+        assertThat(streets.get("BAY"), equalTo(1000 * 15L));
+
+        File file = folder.newFile();
+        Files.write(file.toPath(), other.getBytes(StandardCharsets.US_ASCII));
+        assertThat(engine.sortStreetsByProfitabilityLong(file.toPath()).get("QUEEN"), equalTo(1500 * 60L));
+    }
+
+    @Test
+    public void testReportGroupsInOnePass() throws Exception {
+        // Monday, Wednesday twice and a Monday, and a row with neither a date nor a time
+        String rows = "***1,20120102,29,X,30,0005,NR,1 KING ST W,,\n"
+                + "***2,20120215,5,X,60,1230,NR,20 QUEEN ST E,,\n"
+                + "***3,20120215,29,X,15,2359,NR,5 BAY ST,,\n"
+                + "***4,20121231,5,X,0,930,NR,,,\n"
+                + "***5,2012,5,X,45,ABCD,NR,2 FRONT ST,,\n";
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 0; i < 2000; i++) {
+            csv.append(rows);
+        }
+        File file = folder.newFile();
+        Files.write(file.toPath(), csv.toString().getBytes(StandardCharsets.US_ASCII));
+
+        for (ParkingTicketsEngine.Pipeline pipeline : new ParkingTicketsEngine.Pipeline[] {ParkingTicketsEngine.Pipeline.QUEUE, ParkingTicketsEngine.Pipeline.FORK_JOIN}) {
+            try (ParkingTicketsEngine pipelineEngine = new ParkingTicketsEngine(3, 16, 512 * 1024, pipeline)) {
+                ParkingTicketsReport fromFile = pipelineEngine.report(file.toPath(), GroupBy.values());
+                ParkingTicketsReport fromStream;
+                try (InputStream stream = new FileInputStream(file)) {
+                    fromStream = pipelineEngine.report(stream, GroupBy.values());
+                }
+                for (ParkingTicketsReport report : new ParkingTicketsReport[] {fromFile, fromStream}) {
+                    assertThat(report.streets().get("QUEEN"), equalTo(2000 * 60L));
+                    assertThat(report.streets().size(), equalTo(4));
+
+                    assertThat(report.group(GroupBy.INFRACTION_CODE).size(), equalTo(2));
+                    assertThat(report.group(GroupBy.INFRACTION_CODE).get(29), equalTo(new FineStats(2000 * 45, 2000 * 2, 15, 30)));
+                    assertThat(report.group(GroupBy.INFRACTION_CODE).get(5), equalTo(new FineStats(2000 * 105, 2000 * 3, 0, 60)));
+
+                    assertThat(report.group(GroupBy.MONTH).keySet(), contains(1, 2, 12));
+                    assertThat(report.group(GroupBy.MONTH).get(2), equalTo(new FineStats(2000 * 75, 2000 * 2, 15, 60)));
+
+                    assertThat(report.group(GroupBy.DAY_OF_WEEK).keySet(), contains(1, 3));
+                    assertThat(report.group(GroupBy.DAY_OF_WEEK).get(1), equalTo(new FineStats(2000 * 30, 2000 * 2, 0, 30)));
+
+                    assertThat(report.group(GroupBy.HOUR).keySet(), contains(0, 9, 12, 23));
+                    assertThat(report.group(GroupBy.HOUR).get(9), equalTo(new FineStats(0, 2000, 0, 0)));
+                }
+
+                assertThat(pipelineEngine.report(file.toPath(), GroupBy.HOUR).group(GroupBy.HOUR).size(), equalTo(4));
+                // nor do later runs
+                assertThat(pipelineEngine.sortStreetsByProfitabilityLong(file.toPath()).get("QUEEN"), equalTo(2000 * 60L));
+                assertThat(pipelineEngine.mergedGroups.groupBys.length, equalTo(0));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReportRejectsGroupNotAsked() throws Exception {
+        engine.report(write(1, "30", "1 KING ST W").toPath(), GroupBy.MONTH).group(GroupBy.HOUR);
+    }
+
+    @Test
+    public void testCacheReadInsteadOfText() throws Exception {
+        String[] streets = {"1 KING ST W", "20 QUEEN ST E", "5 BAY ST", "9 ST CLAIR AVE W", "2 FRONT ST", ""};
+        String[] rows = new String[3000];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = rows(1, String.valueOf(5 * (i % 11)), streets[i % streets.length]).replace(",1200,", "," + (i % 2400) + ",");
+        }
+        File file = write(rows);
+        SortedMap<String, Long> expected = engine.sortStreetsByProfitabilityLong(file.toPath());
+        ParkingTicketsReport expectedReport = engine.report(file.toPath(), GroupBy.values());
+
+        assertThat(engine.writeCache(file.toPath()), equalTo(true));
+        assertThat(TicketsCache.open(file.toPath()).rows, equalTo(rows.length));
+        try (ParkingTicketsEngine other = new ParkingTicketsEngine(2, 16, 512 * 1024, ParkingTicketsEngine.Pipeline.FORK_JOIN)) {
+            for (ParkingTicketsEngine e : new ParkingTicketsEngine[] {engine, other}) {
+                assertThat(e.sortStreetsByProfitabilityLong(file.toPath()), equalTo(expected));
+                ParkingTicketsReport report = e.report(file.toPath(), GroupBy.values());
+                for (GroupBy groupBy : GroupBy.values()) {
+                    assertThat(groupBy.name(), report.group(groupBy), equalTo(expectedReport.group(groupBy)));
+                }
+            }
+        }
+
+        // a changed file makes the cache stale
+        Files.write(file.toPath(), (HEADER + rows(2, "30", "1 KING ST W")).getBytes(StandardCharsets.US_ASCII));
+        assertThat(TicketsCache.open(file.toPath()), nullValue());
+        assertThat(engine.sortStreetsByProfitabilityLong(file.toPath()).get("KING"), equalTo(60L));
+    }
+
+    @Test
+    public void testStatsOfEachRun() throws Exception {
+        File file = write(rows(5000, "30", "1 KING ST W"), rows(1000, "60", "20 QUEEN ST E"));
+        long bytes = file.length() - HEADER.length();
+
+        for (ParkingTicketsEngine.Pipeline pipeline : new ParkingTicketsEngine.Pipeline[] {ParkingTicketsEngine.Pipeline.QUEUE, ParkingTicketsEngine.Pipeline.DISRUPTOR_BLOCKING}) {
+            try (ParkingTicketsEngine pipelineEngine = new ParkingTicketsEngine(3, 16, 256 * 1024, pipeline)) {
+                StatsRecorder stats = new StatsRecorder();
+                pipelineEngine.setStatsListener(stats);
+                pipelineEngine.sortStreetsByProfitability(file.toPath());
+                try (InputStream stream = new FileInputStream(file)) {
+                    pipelineEngine.topStreets(stream, 1);
+                }
+
+                assertThat(pipeline.name(), stats.runs().count(), equalTo(2L));
+                assertThat(stats.phase("Workers done").count(), equalTo(2L));
+                assertThat(stats.phase("Parallel ordered").count(), equalTo(1L));
+                assertThat(stats.phase("Parallel selected").count(), equalTo(1L));
+                long rows = 0;
+                long parsed = 0;
+                for (int w = 0; w < 3; w++) {
+                    rows += stats.rows(w);
+                    parsed += stats.bytes(w);
+                }
+                assertThat(pipeline.name(), rows, equalTo(2 * 6000L));
+                assertThat(pipeline.name(), parsed, equalTo(2 * bytes));
+                assertThat(stats.maxProbes(), greaterThanOrEqualTo(0));
+
+                // approximate runs merge no totals, so report no probes
+                final int[] probeReports = new int[1];
+                pipelineEngine.setStatsListener(new StatsRecorder() {
+                    @Override
+                    public synchronized void probes(int entries, long probes, int maxProbes) {
+                        probeReports[0]++;
+                    }
+                });
+                pipelineEngine.topStreets(file.toPath(), 1);
+                assertThat(pipeline.name(), probeReports[0], equalTo(1));
+                pipelineEngine.topStreetsApproximate(file.toPath(), 1);
+                assertThat(pipeline.name(), probeReports[0], equalTo(1));
+
+                // nothing is recorded once the listener is removed
+                pipelineEngine.setStatsListener(null);
+                pipelineEngine.sortStreetsByProfitability(file.toPath());
+                assertThat(stats.runs().count(), equalTo(2L));
+            }
+        }
+    }
+
+    @Test
+    public void testFilesOfDirectoryAsOne() throws Exception {
+        File directory = folder.newFolder("tickets");
+        Files.write(new File(directory, "2011.csv").toPath(),
+                (HEADER + rows(3000, "30", "1 KING ST W")).getBytes(StandardCharsets.US_ASCII));
+        // other columns, and no newline after the last row
+        Files.write(new File(directory, "2012.csv").toPath(),
+                ("location2,set_fine_amount\n" + "20 QUEEN ST E,60\n5 BAY ST,20\n1 KING ST W,15").getBytes(StandardCharsets.US_ASCII));
+        Files.write(new File(directory, "empty.csv").toPath(), new byte[0]);
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(new File(directory, "2013.csv.gz")))) {
+            out.write((HEADER + rows(2, "40", "5 BAY ST")).getBytes(StandardCharsets.US_ASCII));
+        }
+        Files.write(new File(directory, "notes.txt").toPath(), "1 KING ST W,1000\n".getBytes(StandardCharsets.US_ASCII));
+
+        List<Path> files = ParkingTicketsEngine.ticketFiles(directory.toPath());
+        assertThat(files.size(), equalTo(4));
+        assertThat(files.get(0).getFileName().toString(), equalTo("2011.csv"));
+
+        SortedMap<String, Long> streets = engine.sortStreetsByProfitabilityLong(files);
+        assertThat(streets.size(), equalTo(3));
+        assertThat(streets.get("KING"), equalTo(3000 * 30L + 15));
+        assertThat(streets.get("QUEEN"), equalTo(60L));
+        assertThat(streets.get("BAY"), equalTo(100L));
+        // not added to by the next run
+        assertThat(engine.topStreets(files, 1).get(0), equalTo(entry("KING", 3000 * 30L + 15)));
+        assertThat(engine.report(files, GroupBy.MONTH).group(GroupBy.MONTH).get(1).count(), equalTo(3002L));
+    }
+
+    @Test
+    public void testStatsKeepsAtMostMaxIdleEngines() {
+        ParkingTicketsEngine[] engines = new ParkingTicketsEngine[ParkingTicketsStats.MAX_IDLE_ENGINES + 2];
+        for (int i = 0; i < engines.length; i++) {
+            engines[i] = ParkingTicketsStats.acquireEngine();
+        }
+        for (ParkingTicketsEngine e : engines) {
+            ParkingTicketsStats.releaseEngine(e, null);
+        }
+
+        assertThat(ParkingTicketsStats.idleEngines.size(), lessThanOrEqualTo(ParkingTicketsStats.MAX_IDLE_ENGINES));
+        int closed = 0;
+        for (ParkingTicketsEngine e : engines) {
+            if (e.executor.isShutdown()) {
+                assertThat(ParkingTicketsStats.idleEngines.contains(e), equalTo(false));
+                closed++;
+            }
+        }
+        assertThat(closed, greaterThanOrEqualTo(2));
+    }
+
+    @Test
+    public void testCacheHoldsOnlyTheStreetsOfItsFile() throws Exception {
+        File other = write(rows(3, "30", "1 KING ST W"), rows(2, "20", "2 FRONT ST"), rows(4, "10", "7 YONGE ST"));
+        File file = write(rows(2, "50", "5 BAY ST"), rows(1, "40", ""), rows(3, "30", "1 KING ST W"));
+        try (ParkingTicketsEngine cacheEngine = new ParkingTicketsEngine(2, 16, 256 * 1024)) {
+            cacheEngine.sortStreetsByProfitabilityLong(other.toPath());
+            SortedMap<String, Long> expected = cacheEngine.sortStreetsByProfitabilityLong(file.toPath());
+            assertThat(cacheEngine.writeCache(file.toPath()), equalTo(true));
+
+            TicketsCache cache = TicketsCache.open(file.toPath());
+            List<String> names = new ArrayList<>();
+            for (byte[] name : cache.names) {
+                names.add(new String(name, StandardCharsets.US_ASCII));
+            }
+            assertThat(names, containsInAnyOrder("BAY", "KING"));
+            for (int row = 0; row < cache.rows; row++) {
+                assertThat(cache.get(TicketsCache.STREET, row), lessThan(names.size()));
+            }
+
+            // read by an engine whose ids differ
+            try (ParkingTicketsEngine reader = new ParkingTicketsEngine(2, 16, 256 * 1024)) {
+                reader.sortStreetsByProfitabilityLong(write(rows(1, "5", "9 DUNDAS ST W")).toPath());
+                assertThat(reader.sortStreetsByProfitabilityLong(file.toPath()), equalTo(expected));
+            }
+        }
+    }
+
+    @Test
+    public void testStatsClosesEngineOfFailedCall() {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("broken");
+            }
+        };
+        while (!ParkingTicketsStats.idleEngines.isEmpty()) {
+            ParkingTicketsStats.acquireEngine().close();
+        }
+        ParkingTicketsEngine engine = ParkingTicketsStats.acquireEngine();
+        ParkingTicketsStats.releaseEngine(engine, null);
+        try {
+            ParkingTicketsStats.sortStreetsByProfitability(failing);
+            fail("read failure ignored");
+        }
+        catch (IllegalStateException e) {
+            assertThat(e.getCause().getMessage(), equalTo("broken"));
+        }
+        // the call took the idle engine, and didn't put it back
+        assertThat(ParkingTicketsStats.idleEngines.contains(engine), equalTo(false));
+        assertThat(engine.executor.isShutdown(), equalTo(true));
+    }
+
+    @Test
+    public void testWorkerDrainsItsBlocksAfterAFailedOne() throws Exception {
+        try (ParkingTicketsEngine failing = new ParkingTicketsEngine(1, 16, 256 * 1024)) {
+            ParkingTicketsEngine.Worker worker = failing.workers[0];
+            ArrayBlockingQueue<int[]> queue = new ArrayBlockingQueue<>(4);
+            // no chunk 5, then a block that's skipped
+            queue.put(new int[] {0, 10, 5});
+            queue.put(new int[] {0, 0, 0});
+            queue.put(failing.END_OF_WORK);
+            AtomicInteger pending = new AtomicInteger(2);
+            worker.prepare(queue, new ByteBuffer[] {ByteBuffer.allocate(16)}, pending, null);
+            try {
+                worker.run();
+                fail("block failure ignored");
+            }
+            catch (ArrayIndexOutOfBoundsException e) {
+                assertThat(pending.get(), equalTo(0));
+                assertThat(queue.isEmpty(), equalTo(true));
+            }
+        }
+    }
+
+    @Test
+    public void testCacheOfOtherNormalizerIsStale() throws Exception {
+        File file = write(rows(2, "50", "5 BAY ST"), rows(3, "30", "1 KING ST W"));
+        assertThat(engine.writeCache(file.toPath()), equalTo(true));
+        assertThat(TicketsCache.open(file.toPath()), notNullValue());
+
+        // as written by the rules before, with a valid header CRC
+        Path cache = TicketsCache.pathOf(file.toPath());
+        byte[] bytes = Files.readAllBytes(cache);
+        ByteBuffer header = ByteBuffer.wrap(bytes);
+        header.putInt(40, StreetNormalizer.VERSION - 1);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, TicketsCache.HEADER_SIZE - 4);
+        header.putInt(TicketsCache.HEADER_SIZE - 4, (int) crc.getValue());
+        Files.write(cache, bytes);
+
+        assertThat(TicketsCache.open(file.toPath()), nullValue());
+        assertThat(engine.sortStreetsByProfitabilityLong(file.toPath()).get("KING"), equalTo(90L));
+    }
+
+    @Test
+    public void testConcurrentCallsMatchSingleThreadedRuns() throws Exception {
+        final String[] locations = {"1 KING ST W", "20 QUEEN ST E", "5 BAY ST", "9 ST CLAIR AVE W", "2 FRONT ST"};
+        final int calls = 8;
+        final File[] files = new File[calls];
+        final List<SortedMap<String, Integer>> expected = new ArrayList<>();
+        for (int c = 0; c < calls; c++) {
+            // different streets and fines per file, each mapped in more than one block
+            files[c] = write(rows(8000, String.valueOf(10 + c), locations[c % locations.length]),
+                    rows(6000, String.valueOf(5 * c + 1), locations[(c + 1) % locations.length]),
+                    rows(6000, "3", locations[(c + 2) % locations.length]));
+            assertThat(files[c].length(), greaterThan((long) ParkingTicketsEngine.MAP_BLOCK_SIZE));
+            expected.add(engine.sortStreetsByProfitability(files[c].toPath()));
+        }
+
+        ExecutorService callers = Executors.newFixedThreadPool(calls);
+        try {
+            List<Future<SortedMap<String, Integer>>> results = new ArrayList<>();
+            for (int c = 0; c < calls; c++) {
+                final File file = files[c];
+                final int call = c;
+                results.add(callers.submit(new Callable<SortedMap<String, Integer>>() {
+                    @Override
+                    public SortedMap<String, Integer> call() throws Exception {
+                        SortedMap<String, Integer> last = null;
+                        for (int round = 0; round < 3; round++) {
+                            // half through the facade's pool, half on engines of their own, by path and by stream
+                            if (call % 4 == 0) {
+                                last = ParkingTicketsStats.sortStreetsByProfitability(file.toPath());
+                            }
+                            else if (call % 4 == 2) {
+                                try (InputStream stream = new FileInputStream(file)) {
+                                    last = ParkingTicketsStats.sortStreetsByProfitability(stream);
+                                }
+                            }
+                            else {
+                                try (ParkingTicketsEngine own = new ParkingTicketsEngine(2, 16, 256 * 1024);
+                                        InputStream stream = new FileInputStream(file)) {
+                                    last = call % 4 == 1 ? own.sortStreetsByProfitability(file.toPath())
+                                            : own.sortStreetsByProfitability(stream);
+                                }
+                            }
+                        }
+                        return last;
+                    }
+                }));
+            }
+            for (int c = 0; c < calls; c++) {
+                assertThat("call " + c, results.get(c).get(), equalTo(expected.get(c)));
+            }
+        }
+        finally {
+            callers.shutdown();
+        }
+        assertThat(expected.get(0).get("KING"), equalTo(8000 * 10));
+    }
+
+    @Test
+    public void testBlocksOfRowsLongerThanABlock() {
+        int size = ParkingTicketsEngine.MAP_BLOCK_SIZE;
+        byte[] bytes = new byte[3 * size];
+        Arrays.fill(bytes, (byte) 'x');
+        // short rows, then a row of 1.5 blocks, then short rows
+        int[] newlines = {10, 20, 30 + size + size / 2, 40 + size + size / 2};
+        for (int newline : newlines) {
+            bytes[newline] = '\n';
+        }
+        ByteBuffer chunk = ByteBuffer.wrap(bytes);
+        for (byte[] data : new byte[][] {bytes, new byte[bytes.length]}) {
+            ArrayList<int[]> regions = new ArrayList<>();
+            regions.add(new int[] {5, data.length, 0});
+            ArrayList<int[]> blocks = new ArrayList<>();
+            // and without any newline
+            ParkingTicketsEngine.splitBlocks(new ByteBuffer[] {data == bytes ? chunk : ByteBuffer.wrap(data)}, regions, 2, blocks);
+
+            int start = 5;
+            for (int[] block : blocks) {
+                assertThat(block[0], equalTo(start));
+                assertThat(block[1], greaterThan(block[0]));
+                assertThat(block[2], equalTo(2));
+                assertThat(block[1] == data.length || data[block[1] - 1] == '\n', equalTo(true));
+                start = block[1];
+            }
+            assertThat(start, equalTo(data.length));
+        }
+    }
+
+    @Test
+    public void testMappedFileWithRowLongerThanABlock() throws Exception {
+        StringBuilder description = new StringBuilder();
+        while (description.length() < ParkingTicketsEngine.MAP_BLOCK_SIZE * 3 / 2) {
+            description.append("PARK FAIL TO DEPOSIT FEE IN METER ");
+        }
+        File file = write(rows(2, "30", "1 KING ST W"),
+                rows(1, "60", "20 QUEEN ST E").replace("PARK FAIL TO DEPOSIT FEE IN METER", description), rows(3, "20", "5 BAY ST"));
+
+        SortedMap<String, Long> streets = engine.sortStreetsByProfitabilityLong(file.toPath());
+
+        assertThat(streets.size(), equalTo(3));
+        assertThat(streets.get("KING"), equalTo(60L));
+        assertThat(streets.get("QUEEN"), equalTo(60L));
+        assertThat(streets.get("BAY"), equalTo(60L));
+    }
+
+    @Test
+    public void testParseRowsAtEveryAlignment() {
+        // short and empty rows, fields longer than a word, and a last row without its newline
+        String rows = "***00001,20120101,5,PARK FAIL TO DEPOSIT FEE IN METER,30,1200,NR,1 KING ST W,,\n"
+                + "\n"
+                + "***2,20120101,5,X,1000,1200,NR\n"
+                + "***00003,20120101,5,PARK FAIL TO DEPOSIT FEE IN METER AND MORE,45,1200,AT,20 QUEEN ST E\n"
+                + "***00004,20120101,5,X,5,1200,NR,5 BAY ST";
+        byte[] row_bytes = rows.getBytes(StandardCharsets.US_ASCII);
+        for (int offset = 0; offset < 16; offset++) {
+            // separators around the block that mustn't be read
+            byte[] bytes = new byte[offset + row_bytes.length + 16];
+            Arrays.fill(bytes, (byte) ',');
+            System.arraycopy(row_bytes, 0, bytes, offset, row_bytes.length);
+            for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+                StreetDictionary streets = new StreetDictionary(16);
+                StreetTotals totals = new StreetTotals(16);
+                ParkingTicketsEngine.parseRows(ByteBuffer.wrap(bytes).order(order), offset, offset + row_bytes.length,
+                        CsvSchema.DEFAULT, new StreetNormalizer(streets), totals);
+                OpenBytesLongHashMap map = new OpenBytesLongHashMap(16, true);
+                totals.putTo(streets, map);
+
+                assertThat(map.size(), equalTo(3));
+                assertThat(map.get("KING"), equalTo(30L));
+                assertThat(map.get("QUEEN"), equalTo(45L));
+                assertThat(map.get("BAY"), equalTo(5L));
+            }
+        }
+    }
+
+    private static Map.Entry<String, Long> entry(String key, long value) {
+        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+    }
+
+    private File write(int rows, String fine, String location2) throws IOException {
+        return write(rows(rows, fine, location2));
+    }
+
+    private static String rows(int rows, String fine, String location2) {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            csv.append("***").append(10000 + i).append(",20120101,5,PARK FAIL TO DEPOSIT FEE IN METER,")
+                    .append(fine).append(",1200,NR,").append(location2).append(",,\n");
+        }
+        return csv.toString();
+    }
+
+    private File write(String... rows) throws IOException {
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (String row : rows) {
+            csv.append(row);
+        }
+        File file = folder.newFile();
+        Files.write(file.toPath(), csv.toString().getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+}
@@ -0,0 +1,60 @@
+package ca.kijiji.contest;
+
+import org.junit.Test;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class SortedStreetMapTest {
+
+    private static final SortedStreetMap<Long> STREETS = new SortedStreetMap<Long>(entries(Arrays.asList(
+        entry("KING", 90), entry("BAY", 60), entry("QUEEN", 60), entry("DUNDAS", 10)
+    )), new int[] {1, 3, 0, 2});
+
+    @Test
+    public void testOrderAndLookup() {
+        assertThat(new ArrayList<>(STREETS.keySet()), contains("KING", "BAY", "QUEEN", "DUNDAS"));
+        assertThat(STREETS.firstKey(), equalTo("KING"));
+        assertThat(STREETS.lastKey(), equalTo("DUNDAS"));
+        assertThat(STREETS.get("QUEEN"), equalTo(60L));
+        assertThat(STREETS.get("YONGE"), nullValue());
+        assertThat(STREETS.get(1), nullValue());
+        assertThat(STREETS.comparator().compare("QUEEN", "BAY"), greaterThan(0));
+    }
+
+    @Test
+    public void testSubMapsShareOrder() {
+        SortedMap<String, Long> sub = STREETS.subMap("BAY", "DUNDAS");
+        assertThat(new ArrayList<>(sub.keySet()), contains("BAY", "QUEEN"));
+        assertThat(sub.get("KING"), nullValue());
+        assertThat(STREETS.headMap("BAY").size(), equalTo(1));
+        assertThat(STREETS.tailMap("QUEEN").keySet(), contains("QUEEN", "DUNDAS"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        STREETS.put("YONGE", 1L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSubMapRejectsMissingKey() {
+        STREETS.headMap("YONGE");
+    }
+
+    private static Map.Entry<String, Long>[] entries(List<Map.Entry<String, Long>> list) {
+        @SuppressWarnings("unchecked")
+        Map.Entry<String, Long>[] entries = (Map.Entry<String, Long>[]) new Map.Entry<?, ?>[list.size()];
+        return list.toArray(entries);
+    }
+
+    private static Map.Entry<String, Long> entry(String key, long value) {
+        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+    }
+}
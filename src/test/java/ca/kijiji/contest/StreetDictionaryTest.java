@@ -0,0 +1,110 @@
+package ca.kijiji.contest;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class StreetDictionaryTest {
+
+    @Test
+    public void testDenseIdsKeptWhileGrowing() {
+        StreetDictionary streets = new StreetDictionary(4);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(id(streets, "STREET" + i), equalTo(i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertThat(id(streets, "STREET" + i), equalTo(i));
+            assertThat(streets.toString(i), equalTo("STREET" + i));
+        }
+        assertThat(streets.size(), equalTo(1000));
+    }
+
+    @Test
+    public void testOneIdPerNameAcrossThreads() throws Exception {
+        final StreetDictionary streets = new StreetDictionary(16);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<int[]>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(new Callable<int[]>() {
+                    public int[] call() {
+                        int[] ids = new int[5000];
+                        for (int i = 0; i < ids.length; i++) {
+                            ids[i] = id(streets, "STREET" + i);
+                        }
+                        return ids;
+                    }
+                }));
+            }
+            int[] first = futures.get(0).get();
+            for (Future<int[]> future : futures) {
+                assertThat(future.get(), equalTo(first));
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        assertThat(streets.size(), equalTo(5000));
+    }
+
+    @Test
+    public void testTotalsMergedById() {
+        StreetDictionary streets = new StreetDictionary(16);
+        StreetTotals totals1 = new StreetTotals(16);
+        StreetTotals totals2 = new StreetTotals(16);
+        totals1.add(id(streets, "KING"), 30);
+        totals2.add(id(streets, "KING"), 45);
+        // past the initial length
+        for (int i = 0; i < 100; i++) {
+            totals2.add(id(streets, "STREET" + i), 5);
+        }
+        totals2.addTo(totals1);
+
+        OpenBytesLongHashMap map = new OpenBytesLongHashMap(256, true);
+        totals1.putTo(streets, map);
+        assertThat(map.size(), equalTo(101));
+        assertThat(map.get("KING"), equalTo(75L));
+        assertThat(map.get("STREET99"), equalTo(5L));
+
+        totals1.clear();
+        assertThat(totals1.size(), equalTo(0));
+    }
+
+    @Test
+    public void testTotalsMergedByIdRange() {
+        StreetDictionary streets = new StreetDictionary(16);
+        StreetTotals dest = new StreetTotals(16);
+        StreetTotals totals = new StreetTotals(16);
+        dest.add(id(streets, "KING"), 30);
+        for (int i = 0; i < 100; i++) {
+            totals.add(id(streets, "STREET" + i), i + 1);
+        }
+        dest.grow(totals.size());
+        assertThat(dest.size(), equalTo(101));
+        // the ranges of three owners, in any order
+        totals.addTo(dest, 70, 101);
+        totals.addTo(dest, 0, 35);
+        totals.addTo(dest, 35, 70);
+
+        OpenBytesLongHashMap map = new OpenBytesLongHashMap(256, true);
+        dest.putTo(streets, map);
+        assertThat(map.size(), equalTo(101));
+        assertThat(map.get("KING"), equalTo(30L));
+        assertThat(map.get("STREET0"), equalTo(1L));
+        assertThat(map.get("STREET99"), equalTo(100L));
+    }
+
+    private static int id(StreetDictionary streets, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.US_ASCII);
+        return streets.id(bytes, 0, bytes.length, ByteKeyArena.hash(bytes, 0, bytes.length));
+    }
+}
@@ -0,0 +1,72 @@
+package ca.kijiji.contest;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class StreetNormalizerTest {
+
+    private final StreetDictionary streets = new StreetDictionary(16);
+    private final StreetNormalizer names = new StreetNormalizer(streets);
+
+    @Test
+    public void testNumbersSuffixesAndDirectionsDropped() {
+        assertName("1 KING ST W", "KING");
+        assertName("KING STREET WEST", "KING");
+        assertName("1531-1535 LAKE SHORE BLVD W", "LAKE SHORE");
+        assertName("123A QUEEN E", "QUEEN");
+        assertName("R/O 12 BAY", "BAY");
+        assertName("NR 20 BAY ST", "BAY");
+        assertName("AVENUE RD", "AVENUE");
+        assertName("123 16TH AVE", "16TH");
+    }
+
+    @Test
+    public void testVariantsCanonicalized() {
+        assertName("ST CLAIR AVE W", "ST CLAIR");
+        assertName("1 ST. CLAIR AVE", "ST CLAIR");
+        assertName("SAINT CLAIR", "ST CLAIR");
+        assertName("STCLAIR AVE W", "ST CLAIR");
+        assertName("10 st clair ave w", "ST CLAIR");
+        assertName("7 THE QUEENSWAY", "THE QUEENSWAY");
+        assertName("MOUNT PLEASANT RD", "MT PLEASANT");
+        assertName("O'CONNOR DR", "OCONNOR");
+    }
+
+    @Test
+    public void testNamesWithDirectionsAndSuffixWords() {
+        assertName("THE WEST MALL", "THE WEST MALL");
+        assertName("2 THE EAST MALL", "THE EAST MALL");
+        assertName("HIGH PARK AVE", "HIGH PARK");
+        assertName("1 HIGH PARK AVE W", "HIGH PARK");
+        assertName("QUEENS PARK", "QUEENS PARK");
+        assertName("QUEENS PARK CRES E", "QUEENS PARK");
+        assertName("12 ELM GATE W", "ELM");
+        assertName("5 PARK RD", "PARK");
+    }
+
+    @Test
+    public void testFieldsWithoutName() {
+        assertName("", null);
+        assertName("12 E", null);
+        assertName("ST W", null);
+        assertName("1234", null);
+    }
+
+    private void assertName(String field, String expected) {
+        ByteBuffer data = ByteBuffer.wrap(("," + field + ",").getBytes(StandardCharsets.US_ASCII));
+        int end = data.capacity() - 1;
+        // the second time from the cache
+        for (int i = 0; i < 2; i++) {
+            int id = names.streetId(data, 1, end);
+            assertThat(field, id >= 0 ? streets.toString(id) : null, equalTo(expected));
+        }
+        byte[] output = new byte[256];
+        int length = StreetNormalizer.normalize(data, 1, end, output);
+        assertThat(field, length > 0 ? new String(output, 0, length, StandardCharsets.US_ASCII) : null, equalTo(expected));
+    }
+}